@@ -6,6 +6,7 @@ import (
 	"k8s-cloudsim-adapter/kube_client"
 	"k8s-cloudsim-adapter/utils"
 	corev1 "k8s.io/api/core/v1"
+	apierrors "k8s.io/apimachinery/pkg/api/errors"
 	"log"
 	"net/http"
 	"strconv"
@@ -116,6 +117,65 @@ func (c *Communicator) HandleNodes(w http.ResponseWriter, r *http.Request) {
 	http.Error(w, "Timeout waiting for all nodes to become ready", http.StatusRequestTimeout)
 }
 
+// HandleNodeDelta applies only the node additions and removals CloudSim has seen since its last sync.
+// Unlike HandleNodes it never lists the whole cluster, so its cost scales with the size of the change.
+func (c *Communicator) HandleNodeDelta(w http.ResponseWriter, r *http.Request) {
+	log.Printf("Starting HandleNodeDelta()")
+	if r.Method != http.MethodPost {
+		http.Error(w, "Only POST allowed", http.StatusMethodNotAllowed)
+		return
+	}
+
+	var delta CsNodeDelta
+	if err := json.NewDecoder(r.Body).Decode(&delta); err != nil {
+		http.Error(w, "Invalid JSON: "+err.Error(), http.StatusBadRequest)
+		return
+	}
+
+	log.Printf("DEBUG: Node delta to add (%d) and delete (%d)", len(delta.Add), len(delta.Remove))
+
+	// Step 1: Delete removed nodes
+	if len(delta.Remove) > 0 {
+		names := make([]string, 0, len(delta.Remove))
+		for _, id := range delta.Remove {
+			names = append(names, csNodeName(id))
+		}
+		if err := c.kubeClient.DeleteNodesByName(names); err != nil {
+			http.Error(w, "Failed to delete removed nodes: "+err.Error(), http.StatusInternalServerError)
+			return
+		}
+	}
+
+	// Step 2: Add new nodes. A node that already exists was created by an earlier sync.
+	added := make([]string, 0, len(delta.Add))
+	for _, node := range delta.Add {
+		if err := c.SendFakeNodeFromCs(node); err != nil && !apierrors.IsAlreadyExists(err) {
+			http.Error(w, "Failed to create new nodes: "+err.Error(), http.StatusInternalServerError)
+			return
+		}
+		added = append(added, csNodeName(node.ID))
+	}
+
+	// Step 3: Wait for readiness of the added nodes only
+	const maxAttempts = 20
+	const delay = time.Second
+	for i := 0; i < maxAttempts; i++ {
+		ok, err := c.kubeClient.AreNodesReady(added)
+		if err != nil {
+			http.Error(w, "Error checking node readiness: "+err.Error(), http.StatusInternalServerError)
+			return
+		}
+		if ok {
+			w.WriteHeader(http.StatusOK)
+			fmt.Fprintf(w, "Synced node delta (added: %d, deleted: %d)\n", len(delta.Add), len(delta.Remove))
+			return
+		}
+		time.Sleep(delay)
+	}
+
+	http.Error(w, "Timeout waiting for added nodes to become ready", http.StatusRequestTimeout)
+}
+
 func (c *Communicator) HandlePodStatus(w http.ResponseWriter, r *http.Request) {
 	if r.Method != http.MethodGet {
 		http.Error(w, "Only GET method is allowed", http.StatusMethodNotAllowed)
@@ -233,7 +293,7 @@ func (c *Communicator) HandleDeleteCloudletAndWait(w http.ResponseWriter, r *htt
 		return
 	}
 
-	// Accept array of pods for consistency (even if only one)
+	// Accept the full array of finished pods; the broker batches completions that share a timestamp
 	var csPods []CsPod
 	if err := json.NewDecoder(r.Body).Decode(&csPods); err != nil {
 		http.Error(w, "Invalid JSON payload: "+err.Error(), http.StatusBadRequest)
@@ -245,10 +305,13 @@ func (c *Communicator) HandleDeleteCloudletAndWait(w http.ResponseWriter, r *htt
 		return
 	}
 
-	// Take first pod
-	csPod := csPods[0]
+	// Delete every finished pod in one pass, then wait once for the scheduler to react
+	cloudletIDs := make([]int, 0, len(csPods))
+	for _, csPod := range csPods {
+		cloudletIDs = append(cloudletIDs, csPod.ID)
+	}
 
-	newPods, err := c.kubeClient.DeletePodAndWaitForRescheduling(csPod.ID)
+	newPods, err := c.kubeClient.DeletePodsAndWaitForRescheduling(cloudletIDs)
 	if err != nil {
 		http.Error(w, "Error during deletion and rescheduling: "+err.Error(), http.StatusInternalServerError)
 		return
@@ -256,9 +319,11 @@ func (c *Communicator) HandleDeleteCloudletAndWait(w http.ResponseWriter, r *htt
 
 	csPodsResult := ConvertToCsPods(newPods)
 	if len(csPodsResult) != 0 {
-		log.Printf("Assigning Pod %d to Node %d...", csPodsResult[0].ID, csPodsResult[0].NodeID)
+		for _, pod := range csPodsResult {
+			log.Printf("Assigning Pod %d to Node %d...", pod.ID, pod.NodeID)
+		}
 	} else {
-		log.Printf("No new pods to assign...")
+		log.Printf("No new pods to assign after deleting %d pods...", len(cloudletIDs))
 	}
 
 	w.Header().Set("Content-Type", "application/json")
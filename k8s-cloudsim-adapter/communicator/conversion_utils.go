@@ -96,7 +96,7 @@ func (c *Communicator) SendFakeNodeFromCs(csNode CsNode) error {
 
 	node := &corev1.Node{
 		ObjectMeta: metav1.ObjectMeta{
-			Name: fmt.Sprintf("csnode-%d", csNode.ID),
+			Name: csNodeName(csNode.ID),
 			Labels: map[string]string{
 				"beta.kubernetes.io/arch":       "amd64",
 				"beta.kubernetes.io/os":         "linux",
@@ -24,3 +24,7 @@ func extractNodeID(name string) (int, error) {
 	}
 	return 0, fmt.Errorf("not a valid csnode name: %s", name)
 }
+
+func csNodeName(id int) string {
+	return fmt.Sprintf("csnode-%d", id)
+}
@@ -13,6 +13,13 @@ type CsNode struct {
 	Type string `json:"type"` // "vm" or "container"
 }
 
+// CsNodeDelta is the body of /nodes/delta: the nodes CloudSim created and the IDs it destroyed
+// since the previous sync.
+type CsNodeDelta struct {
+	Add    []CsNode `json:"add"`
+	Remove []int    `json:"remove"`
+}
+
 // CsPod represents a simulated Kubernetes CsPod (which maps to a CloudSim Cloudlet).
 type CsPod struct {
 	ID             int     `json:"id"`
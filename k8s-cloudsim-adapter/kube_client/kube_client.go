@@ -7,6 +7,7 @@ import (
 	"time"
 
 	corev1 "k8s.io/api/core/v1"
+	apierrors "k8s.io/apimachinery/pkg/api/errors"
 	"k8s.io/client-go/kubernetes"
 	"k8s.io/client-go/tools/clientcmd"
 	"k8s.io/client-go/util/homedir"
@@ -49,19 +50,29 @@ func (kc *KubeClient) ResetCluster() error {
 	return nil
 }
 
-func (kc *KubeClient) DeletePodAndWaitForRescheduling(cloudletID int) ([]*corev1.Pod, error) {
-	podName := fmt.Sprintf("cspod-%d", cloudletID)
-	log.Printf("Deleting pod %d and watching for rescheduling...", cloudletID)
+// DeletePodsAndWaitForRescheduling deletes the pods of all given cloudlets and then waits for the
+// pending pods to be scheduled into the freed capacity. It returns once no pod is pending, or once
+// some pods were placed and the pending set has not changed for a few polls, so pods bound a moment
+// after the first ones are reported in the same response.
+func (kc *KubeClient) DeletePodsAndWaitForRescheduling(cloudletIDs []int) ([]*corev1.Pod, error) {
+	log.Printf("Deleting pods %v and watching for rescheduling...", cloudletIDs)
 
-	// Capture pre-deletion pod statuses
+	// Capture pre-deletion pod placements
 	prevPods, err := kc.GetPods("default")
 	if err != nil {
 		return nil, fmt.Errorf("failed to fetch pods before deletion: %w", err)
 	}
 
-	// Delete pod
-	if err := kc.DeletePod(podName); err != nil {
-		return nil, fmt.Errorf("failed to delete pod: %w", err)
+	// Delete pods. A pod that is already gone has nothing left to free.
+	for _, cloudletID := range cloudletIDs {
+		podName := fmt.Sprintf("cspod-%d", cloudletID)
+		if err := kc.DeletePod(podName); err != nil {
+			if apierrors.IsNotFound(err) {
+				log.Printf("Pod %s already deleted, skipping", podName)
+				continue
+			}
+			return nil, fmt.Errorf("failed to delete pod %s: %w", podName, err)
+		}
 	}
 
 	// Check if all pods are already scheduled (no need to wait)
@@ -77,14 +88,21 @@ func (kc *KubeClient) DeletePodAndWaitForRescheduling(cloudletID int) ([]*corev1
 		return []*corev1.Pod{}, nil
 	}
 
-	prevStatuses := make(map[string]string)
+	prevNodes := make(map[string]string)
 	for _, pod := range prevPods {
-		prevStatuses[pod.Name] = string(pod.Status.Phase)
+		prevNodes[pod.Name] = pod.Spec.NodeName
 	}
 
 	// Watch for rescheduling
 	const maxAttempts = 30
 	const delay = time.Second / 4
+	// Polls in a row with the same pending set, after a placement, before the placements are reported
+	const stablePolls = 2
+
+	newlyScheduled := make(map[string]*corev1.Pod)
+	var order []string
+	lastPending := -1
+	unchanged := 0
 
 	for i := 0; i < maxAttempts; i++ {
 		log.Printf("Attempt %d to detect rescheduling...", i)
@@ -93,21 +111,42 @@ func (kc *KubeClient) DeletePodAndWaitForRescheduling(cloudletID int) ([]*corev1
 			return nil, fmt.Errorf("failed to fetch pods after deletion: %w", err)
 		}
 
-		var newlyScheduled []*corev1.Pod
+		pending := 0
+		placed := 0
 		for _, pod := range currPods {
-			prevStatus := prevStatuses[pod.Name]
-			currStatus := string(pod.Status.Phase)
-			if pod.Spec.NodeName != "" && prevStatus != currStatus {
-				newlyScheduled = append(newlyScheduled, pod)
+			if pod.DeletionTimestamp != nil {
+				continue
+			}
+			if pod.Spec.NodeName == "" {
+				pending++
+				continue
+			}
+			if prevNodes[pod.Name] == "" {
+				if _, seen := newlyScheduled[pod.Name]; !seen {
+					order = append(order, pod.Name)
+					placed++
+				}
+				newlyScheduled[pod.Name] = pod
 			}
 		}
 
-		if len(newlyScheduled) > 0 {
-			return newlyScheduled, nil
+		if placed == 0 && pending == lastPending {
+			unchanged++
+		} else {
+			unchanged = 0
+		}
+		lastPending = pending
+
+		if len(newlyScheduled) > 0 && (pending == 0 || unchanged >= stablePolls) {
+			break
 		}
 
 		time.Sleep(delay)
 	}
 
-	return []*corev1.Pod{}, nil // No rescheduling detected within timeout
+	result := make([]*corev1.Pod, 0, len(order))
+	for _, name := range order {
+		result = append(result, newlyScheduled[name])
+	}
+	return result, nil // Empty if no rescheduling was detected within the timeout
 }
@@ -4,6 +4,7 @@ import (
 	"context"
 	"fmt"
 	corev1 "k8s.io/api/core/v1"
+	apierrors "k8s.io/apimachinery/pkg/api/errors"
 	"k8s.io/apimachinery/pkg/api/resource"
 	metav1 "k8s.io/apimachinery/pkg/apis/meta/v1"
 	"k8s.io/utils/pointer"
@@ -46,6 +47,33 @@ func (kc *KubeClient) AreAllNodesReady() (bool, error) {
 	return true, nil
 }
 
+// AreNodesReady checks readiness of the named nodes only, without listing the whole cluster.
+func (kc *KubeClient) AreNodesReady(names []string) (bool, error) {
+	for _, name := range names {
+		node, err := kc.clientset.CoreV1().Nodes().Get(context.TODO(), name, metav1.GetOptions{})
+		if err != nil {
+			if apierrors.IsNotFound(err) {
+				return false, nil
+			}
+			return false, err
+		}
+		if !isNodeReady(node) {
+			log.Printf("Node %s ready check: false", name)
+			return false, nil
+		}
+	}
+	return true, nil
+}
+
+func isNodeReady(node *corev1.Node) bool {
+	for _, condition := range node.Status.Conditions {
+		if condition.Type == corev1.NodeReady && condition.Status == corev1.ConditionTrue {
+			return true
+		}
+	}
+	return false
+}
+
 func (kc *KubeClient) CreateFakeNode(name string) error {
 	node := &corev1.Node{
 		ObjectMeta: metav1.ObjectMeta{
@@ -133,6 +161,16 @@ func (kc *KubeClient) DeleteNodes(nodes []*corev1.Node) error {
 	return nil
 }
 
+// DeleteNodesByName deletes the named nodes, ignoring any that no longer exist.
+func (kc *KubeClient) DeleteNodesByName(names []string) error {
+	for _, name := range names {
+		if err := kc.DeleteNode(name); err != nil && !apierrors.IsNotFound(err) {
+			return fmt.Errorf("failed to delete node %s: %w", name, err)
+		}
+	}
+	return nil
+}
+
 func (kc *KubeClient) DeleteAllNodes() error {
 	return kc.clientset.CoreV1().
 		Nodes().
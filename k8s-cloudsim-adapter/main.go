@@ -49,6 +49,7 @@ func main() {
 
 	// --- Internal simulation/control endpoints ---
 	router.HandleFunc("/nodes", comm.HandleNodes).Methods("POST")
+	router.HandleFunc("/nodes/delta", comm.HandleNodeDelta).Methods("POST")
 	router.HandleFunc("/schedule-pods", comm.HandleBatchPods).Methods("POST")
 	router.HandleFunc("/pods/", comm.HandlePodStatus).Methods("POST")
 	router.HandleFunc("/pods/update-state", comm.HandleDeleteCloudletAndWait).Methods("POST")
@@ -0,0 +1,179 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+
+package org.example.examples;
+
+import org.cloudbus.cloudsim.*;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.power.models.PowerModelLinear;
+import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.example.kubernetes_broker.InProcessSchedulingBackend;
+import org.example.kubernetes_broker.Live_Kubernetes_Broker_Ex;
+import org.example.kubernetes_broker.PowerDatacenterCustom;
+import org.example.kubernetes_broker.PowerVmCustom;
+import org.example.kubernetes_broker.SimulationCheckpoint;
+import org.example.metrics.CloudletMetrics;
+import org.example.metrics.SchedulerMetrics;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Runs a simulation up to a warm-up time while writing a checkpoint there, then forks several what-if runs
+ * from that checkpoint, each with a different completion batch window, without replaying the warm-up.
+ * Taking the checkpoint does not change the warm-up run, so its result is that of an uninterrupted run.
+ */
+public class Checkpoint_Fork_Example {
+
+	private static final double WARM_UP = 500;
+	private static final double[] BATCH_WINDOWS = {0, 5, 30};
+
+	private static List<Vm> createVM(int userId, int vms) {
+		LinkedList<Vm> list = new LinkedList<>();
+
+		//VM Parameters
+		long size = 10000; //image size (MB)
+		int ram = 512; //vm memory (MB)
+		int mips = 1000;
+		long bw = 1000;
+		int pesNumber = 2; //number of cpus
+		String vmm = "Xen"; //VMM name
+
+		for (int i = 0; i < vms; i++) {
+			list.add(new PowerVmCustom(i, userId, mips, pesNumber, ram, bw, size, 0, vmm, new CloudletSchedulerTimeShared(), 20, i));
+		}
+
+		return list;
+	}
+
+	private static List<Cloudlet> createCloudlet(int userId, int cloudlets) {
+		LinkedList<Cloudlet> list = new LinkedList<>();
+
+		//cloudlet parameters
+		long fileSize = 300;
+		long outputSize = 300;
+		int pesNumber = 1;
+		UtilizationModel utilizationModel = new UtilizationModelFull();
+
+		for (int i = 0; i < cloudlets; i++) {
+			long length = 100000 + (i * 7919L) % 400000;
+			Cloudlet cloudlet = new Cloudlet(i, length, pesNumber, fileSize, outputSize, utilizationModel, utilizationModel, utilizationModel);
+			cloudlet.setUserId(userId);
+			list.add(cloudlet);
+		}
+
+		return list;
+	}
+
+	public static void main(String[] args) {
+		Log.println("Starting Checkpoint_Fork_Example...");
+
+		try {
+			Path checkpointFile = Files.createTempFile("warm_up", ".checkpoint");
+
+			// Warm-up run, checkpointed at WARM_UP
+			Scenario warmUp = new Scenario();
+			warmUp.datacenter.checkpointAt(WARM_UP, checkpointFile, warmUp.broker);
+			double lastClock = CloudSim.startSimulation();
+			CloudSim.stopSimulation();
+			Log.println("Uninterrupted run: finished at " + lastClock + ", energy " + warmUp.datacenter.getPower() / 3600000 + " kWh");
+
+			// What-if runs, all starting from the warm checkpoint
+			SimulationCheckpoint checkpoint = SimulationCheckpoint.read(checkpointFile);
+			for (double batchWindow : BATCH_WINDOWS) {
+				Scenario fork = new Scenario();
+				fork.broker.setCompletionBatchWindow(batchWindow);
+				checkpoint.restore(fork.datacenter, fork.broker);
+				lastClock = CloudSim.startSimulation();
+				CloudSim.stopSimulation();
+				Log.println("Batch window " + batchWindow + " from t=" + checkpoint.getClock() + ": finished at " + lastClock
+						+ ", energy " + fork.datacenter.getPower() / 3600000 + " kWh, pending events "
+						+ (fork.datacenter.restoredEventsMatch() ? "matched the checkpoint" : "DIFFERED from the checkpoint"));
+				// Cloudlet outcomes carry on from the checkpoint; scheduling throughput only covers the fork
+				Log.println("  " + CloudletMetrics.getCount() + " cloudlets finished since t=0, p99 wait "
+						+ CloudletMetrics.getWaitTime(0.99) + " s; " + SchedulerMetrics.getPodsDecided()
+						+ " pods decided since t=" + checkpoint.getClock());
+			}
+
+			Files.deleteIfExists(checkpointFile);
+			Log.println("Checkpoint_Fork_Example finished!");
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			Log.println("The simulation has been terminated due to an unexpected error");
+		}
+	}
+
+	/** Builds the same datacenter and broker, in the same order, every time, so a checkpoint fits each of them. */
+	private static final class Scenario {
+		final PowerDatacenterCustom datacenter;
+		final Live_Kubernetes_Broker_Ex broker;
+
+		Scenario() throws Exception {
+			CloudSim.init(1, Calendar.getInstance(), false);
+			datacenter = createDatacenter("Datacenter_0", 20);
+			broker = new Live_Kubernetes_Broker_Ex("Broker_0", -1, new InProcessSchedulingBackend());
+			int brokerId = broker.getId();
+			broker.submitGuestList(createVM(brokerId, 20));
+			broker.submitCloudletList(createCloudlet(brokerId, 120));
+		}
+	}
+
+	private static PowerDatacenterCustom createDatacenter(String name, int hosts) throws Exception {
+		List<Host> hostList = new ArrayList<>();
+
+		int mips = 1000;
+		int ram = 16384; //host memory (MB)
+		long storage = 1000000; //host storage
+		int bw = 10000;
+
+		for (int hostId = 0; hostId < hosts; hostId++) {
+			List<Pe> peList = new ArrayList<>();
+			peList.add(new Pe(0, new PeProvisionerSimple(mips)));
+			peList.add(new Pe(1, new PeProvisionerSimple(mips)));
+			hostList.add(
+					new PowerHost(
+							hostId,
+							new RamProvisionerSimple(ram),
+							new BwProvisionerSimple(bw),
+							storage,
+							peList,
+							new VmSchedulerTimeShared(peList),
+							new PowerModelLinear(250, 30)
+					)
+			);
+		}
+
+		String arch = "x86";      // system architecture
+		String os = "Linux";          // operating system
+		String vmm = "Xen";
+		double time_zone = 10.0;         // time zone this resource located
+		double cost = 3.0;              // the cost of using processing in this resource
+		double costPerMem = 0.05;		// the cost of using memory in this resource
+		double costPerStorage = 0.1;	// the cost of using storage in this resource
+		double costPerBw = 0.1;			// the cost of using bw in this resource
+		LinkedList<Storage> storageList = new LinkedList<>();	//we are not adding SAN devices by now
+
+		DatacenterCharacteristics characteristics = new DatacenterCharacteristics(
+				arch, os, vmm, hostList, time_zone, cost, costPerMem, costPerStorage, costPerBw);
+
+		PowerDatacenterCustom datacenter = new PowerDatacenterCustom(name, characteristics, new VmAllocationPolicySimple(hostList), storageList, 20, true);
+		datacenter.setDisableMigrations(true);
+		return datacenter;
+	}
+}
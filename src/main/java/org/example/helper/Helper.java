@@ -10,6 +10,7 @@ import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
 import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
 import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
 import org.cloudbus.cloudsim.util.MathUtil;
+import org.example.kubernetes_broker.PowerDatacenterCustom;
 
 import java.io.BufferedWriter;
 import java.io.File;
@@ -345,6 +346,11 @@ public class Helper {
 				data.append(String.format("%.5f", executionTimeVmReallocationStDev)).append(delimeter);
 				data.append(String.format("%.5f", executionTimeTotalMean)).append(delimeter);
 				data.append(String.format("%.5f", executionTimeTotalStDev)).append(delimeter);
+				if (datacenter instanceof PowerDatacenterCustom) {
+					List<Double> planningTimes = ((PowerDatacenterCustom) datacenter).getExecutionTimeHistoryPlanning();
+					data.append(String.format("%.5f", MathUtil.mean(planningTimes))).append(delimeter);
+					data.append(String.format("%.5f", MathUtil.stDev(planningTimes))).append(delimeter);
+				}
 
 				writeMetricHistory(hosts, vmAllocationPolicy, outputFolder + "/metrics/" + experimentName
 						+ "_metric");
@@ -435,6 +441,20 @@ public class Helper {
 				Log.println(String.format("Execution time - total mean: %.5f sec", executionTimeTotalMean));
 				Log.println(String
 						.format("Execution time - total stDev: %.5f sec", executionTimeTotalStDev));
+				if (datacenter instanceof PowerDatacenterCustom) {
+					PowerDatacenterCustom customDatacenter = (PowerDatacenterCustom) datacenter;
+					List<Double> planningTimes = customDatacenter.getExecutionTimeHistoryPlanning();
+					Log.println(String.format(
+							"Execution time - migration planning mean: %.5f sec",
+							MathUtil.mean(planningTimes)));
+					Log.println(String.format(
+							"Execution time - migration planning stDev: %.5f sec",
+							MathUtil.stDev(planningTimes)));
+					Log.println(String.format(
+							"Migration planning passes: %d (%d skipped over budget)",
+							planningTimes.size(),
+							customDatacenter.getSkippedPlanningPasses()));
+				}
 			}
 			Log.println();
 		}
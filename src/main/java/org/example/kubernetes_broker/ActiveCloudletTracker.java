@@ -0,0 +1,58 @@
+package org.example.kubernetes_broker;
+
+/**
+ * Running count of the cloudlets queued or executing on each guest of a datacenter, and of the guests that
+ * have at least one. The datacenter updates it as cloudlets are submitted and finish and as guests are
+ * destroyed, so reading the totals is O(1) instead of a walk over every host's schedulers.
+ */
+public class ActiveCloudletTracker {
+
+    private final IntObjectHashMap<int[]> cloudletsPerGuest = new IntObjectHashMap<>();
+    private int activeGuests = 0;
+    private int activeCloudlets = 0;
+
+    public void cloudletStarted(int guestId) {
+        int[] count = cloudletsPerGuest.get(guestId);
+        if (count == null) {
+            count = new int[1];
+            cloudletsPerGuest.put(guestId, count);
+        }
+        if (count[0]++ == 0) {
+            activeGuests++;
+        }
+        activeCloudlets++;
+    }
+
+    /** Returns true if this was the last active cloudlet on the guest. */
+    public boolean cloudletFinished(int guestId) {
+        int[] count = cloudletsPerGuest.get(guestId);
+        if (count == null || count[0] == 0) return false;
+        activeCloudlets--;
+        if (--count[0] == 0) {
+            activeGuests--;
+            return true;
+        }
+        return false;
+    }
+
+    public void guestDestroyed(int guestId) {
+        int[] count = cloudletsPerGuest.remove(guestId);
+        if (count != null && count[0] > 0) {
+            activeCloudlets -= count[0];
+            activeGuests--;
+        }
+    }
+
+    public int getActiveGuests() {
+        return activeGuests;
+    }
+
+    public int getActiveCloudlets() {
+        return activeCloudlets;
+    }
+
+    public int getActiveCloudlets(int guestId) {
+        int[] count = cloudletsPerGuest.get(guestId);
+        return count == null ? 0 : count[0];
+    }
+}
@@ -0,0 +1,123 @@
+package org.example.kubernetes_broker;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * {@link SimLog.Sink} that hands lines to a background thread, which writes them to a file through a
+ * buffer and flushes whenever it catches up. The simulation thread only enqueues; it blocks if the writer
+ * falls {@code capacity} lines behind, so no line is dropped. Text passed to {@link #write} is held on the
+ * simulation thread until the line is ended. {@link #close()} writes out everything queued.
+ * <p>
+ * If writing fails the sink disables itself, and close() rethrows the failure.
+ */
+public class AsyncFileLogSink implements SimLog.Sink, Closeable {
+
+    private static final int DEFAULT_CAPACITY = 64 * 1024;
+    private static final int BATCH_SIZE = 1024;
+    // Compared by identity, so it cannot be confused with a logged empty line
+    private static final String END_OF_LOG = new String();
+
+    private final BlockingQueue<String> queue;
+    private final BufferedWriter writer;
+    private final Thread writerThread;
+    private volatile boolean closed = false;
+    private volatile IOException failure = null;
+    // Start of the current line, written without a line break
+    private final StringBuilder partialLine = new StringBuilder();
+
+    public AsyncFileLogSink(Path path) throws IOException {
+        this(path, DEFAULT_CAPACITY);
+    }
+
+    public AsyncFileLogSink(Path path, int capacity) throws IOException {
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8);
+        this.writerThread = new Thread(this::writeQueuedLines, "log-writer-" + path.getFileName());
+        this.writerThread.setDaemon(true);
+        this.writerThread.start();
+    }
+
+    @Override
+    public boolean isEnabled() {
+        return !closed;
+    }
+
+    @Override
+    public void writeLine(String line) {
+        if (closed) return;
+        if (!partialLine.isEmpty()) {
+            line = partialLine.append(line).toString();
+            partialLine.setLength(0);
+        }
+        try {
+            queue.put(line);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void write(String text) {
+        if (closed) return;
+        partialLine.append(text);
+    }
+
+    private void writeQueuedLines() {
+        List<String> batch = new ArrayList<>(BATCH_SIZE);
+        try {
+            while (true) {
+                batch.add(queue.take());
+                queue.drainTo(batch, BATCH_SIZE - 1);
+                for (String line : batch) {
+                    if (line == END_OF_LOG) {
+                        writer.flush();
+                        return;
+                    }
+                    writer.write(line);
+                    writer.newLine();
+                }
+                batch.clear();
+                if (queue.isEmpty()) {
+                    writer.flush();
+                }
+            }
+        } catch (IOException e) {
+            failure = e;
+            closed = true;
+            // Unblock any producer waiting for space
+            queue.clear();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Writes every queued line, then closes the file. Safe to call more than once. */
+    @Override
+    public void close() throws IOException {
+        if (!closed) {
+            if (!partialLine.isEmpty()) {
+                writeLine("");
+            }
+            closed = true;
+            try {
+                queue.put(END_OF_LOG);
+                writerThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        writer.close();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
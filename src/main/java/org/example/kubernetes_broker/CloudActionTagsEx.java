@@ -3,5 +3,11 @@ package org.example.kubernetes_broker;
 import org.cloudbus.cloudsim.core.CloudSimTags;
 
 public enum CloudActionTagsEx implements CloudSimTags{
-    VM_DELAYED_DESTROY;
+    VM_DELAYED_DESTROY,
+    FLUSH_COMPLETED_CLOUDLETS,
+    SCHEDULING_DECISION,
+    VM_CREATE_BATCH,
+    VM_CREATE_BATCH_ACK,
+    CHECKPOINT,
+    CHECKPOINT_RESTORE;
 }
@@ -0,0 +1,68 @@
+package org.example.kubernetes_broker;
+
+/**
+ * How much simulated time an asynchronous scheduling decision takes, from the moment the broker sends the
+ * request to the moment it binds the returned pods. See {@link Live_Kubernetes_Broker_Ex#setAsyncScheduling}.
+ */
+public final class DecisionDelay {
+
+    public enum Mode {
+        /** Decisions are applied at the simulated time they were requested, after any events already queued for it. */
+        ZERO,
+        /** Decisions are applied a fixed number of simulated seconds after the request. */
+        FIXED,
+        /** Decisions are applied after the measured wall-clock round trip, multiplied by a scale factor. */
+        MEASURED
+    }
+
+    private final Mode mode;
+    private final double value;
+
+    private DecisionDelay(Mode mode, double value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Decision delay must not be negative");
+        }
+        this.mode = mode;
+        this.value = value;
+    }
+
+    public static DecisionDelay zero() {
+        return new DecisionDelay(Mode.ZERO, 0.0);
+    }
+
+    public static DecisionDelay fixed(double simulatedSeconds) {
+        return new DecisionDelay(Mode.FIXED, simulatedSeconds);
+    }
+
+    /** One wall-clock second of scheduler latency becomes {@code scale} simulated seconds. */
+    public static DecisionDelay measuredWallLatency(double scale) {
+        return new DecisionDelay(Mode.MEASURED, scale);
+    }
+
+    public Mode getMode() {
+        return mode;
+    }
+
+    /** Returns true if the delay does not depend on how long the request actually took. */
+    public boolean isKnownUpfront() {
+        return mode != Mode.MEASURED;
+    }
+
+    /** Returns the simulated delay for a request whose round trip took {@code wallSeconds}. */
+    public double simulatedDelay(double wallSeconds) {
+        return switch (mode) {
+            case ZERO -> 0.0;
+            case FIXED -> value;
+            case MEASURED -> wallSeconds * value;
+        };
+    }
+
+    @Override
+    public String toString() {
+        return switch (mode) {
+            case ZERO -> "zero";
+            case FIXED -> "fixed " + value + "s";
+            case MEASURED -> "measured x" + value;
+        };
+    }
+}
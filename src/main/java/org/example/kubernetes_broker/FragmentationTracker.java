@@ -0,0 +1,241 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.GuestEntity;
+import org.example.metrics.FragmentationMetrics;
+
+import java.util.Arrays;
+
+/**
+ * Free capacity of the guests (Kubernetes nodes) that no pending pod can use. A pod requests its cloudlet's
+ * PEs and no memory, as in {@link InProcessSchedulingBackend}, so a guest's free PEs and RAM are stranded
+ * while pods are pending and none of them needs as few PEs as the guest has free. A placed pod still uses
+ * its cloudlet's RAM utilisation share of the guest's RAM, which is not free. The fragmentation index is the
+ * stranded share of all free PEs.
+ * <p>
+ * Guests and their free RAM are counted by free PEs, and pending pods by requested PEs, so a placement,
+ * completion or new pod is O(1) and the totals are a walk over the PE counts, not over the guests. Every
+ * change that moves the totals is recorded in the broker's {@link FragmentationMetrics} at the current
+ * simulated time. What is stranded on one guest or host is worked out on request, by walking the guests.
+ */
+public class FragmentationTracker {
+
+    private final FragmentationMetrics metrics;
+    private final IntObjectHashMap<Guest> guests = new IntObjectHashMap<>();
+    // Guest id, PEs and RAM (MB) of every placed pod, and PEs of every pending one, by cloudlet id
+    private final IntObjectHashMap<int[]> placedPods = new IntObjectHashMap<>();
+    private final IntObjectHashMap<int[]> pendingPods = new IntObjectHashMap<>();
+
+    // Number of guests, and their free RAM, with i free PEs
+    private int[] guestsByFreePes = new int[8];
+    private long[] ramByFreePes = new long[8];
+    // Number of pending pods requesting i PEs
+    private int[] pendingByPes = new int[8];
+
+    private long strandedPes = 0;
+    private long strandedRam = 0;
+    private long freePes = 0;
+    private long freeRam = 0;
+    // PEs of the smallest pending pod, or Integer.MAX_VALUE if none is pending
+    private int smallestPending = Integer.MAX_VALUE;
+
+    /** Records into {@code broker}'s {@link FragmentationMetrics}. */
+    public FragmentationTracker(String broker) {
+        metrics = FragmentationMetrics.broker(broker);
+    }
+
+    public void guestAdded(GuestEntity guest) {
+        if (guests.containsKey(guest.getId())) return;
+        Guest added = new Guest(guest.getHost() != null ? guest.getHost().getId() : -1, guest.getNumberOfPes(), guest.getRam());
+        guests.put(guest.getId(), added);
+        count(added, 1);
+        changed();
+    }
+
+    /** Pods still placed on the guest are forgotten with it. */
+    public void guestRemoved(int guestId) {
+        Guest removed = guests.remove(guestId);
+        if (removed == null) return;
+        count(removed, -1);
+        changed();
+    }
+
+    public void podPending(Cloudlet cloudlet) {
+        if (pendingPods.containsKey(cloudlet.getCloudletId())) return;
+        int pes = cloudlet.getNumberOfPes();
+        pendingPods.put(cloudlet.getCloudletId(), new int[]{pes});
+        pendingByPes = grow(pendingByPes, pes);
+        pendingByPes[pes]++;
+        changed();
+    }
+
+    /** The pod was bound to guest {@code guestId}. */
+    public void podPlaced(Cloudlet cloudlet, int guestId) {
+        int cloudletId = cloudlet.getCloudletId();
+        removePending(cloudletId);
+        Guest guest = guests.get(guestId);
+        if (guest != null) {
+            int pes = cloudlet.getNumberOfPes();
+            double ramShare = cloudlet.getUtilizationModelRam().getUtilization(CloudSim.clock());
+            int ram = (int) Math.round(guest.ram * Math.min(Math.max(ramShare, 0.0), 1.0));
+            count(guest, -1);
+            guest.usedPes += pes;
+            guest.usedRam += ram;
+            count(guest, 1);
+            placedPods.put(cloudletId, new int[]{guestId, pes, ram});
+        }
+        changed();
+    }
+
+    /** The pod left the pending set without being placed, e.g. because it failed. */
+    public void podDropped(Cloudlet cloudlet) {
+        if (removePending(cloudlet.getCloudletId())) {
+            changed();
+        }
+    }
+
+    public void podFinished(int cloudletId) {
+        int[] placement = placedPods.remove(cloudletId);
+        if (placement == null) return;
+        Guest guest = guests.get(placement[0]);
+        if (guest == null) return;
+        count(guest, -1);
+        guest.usedPes -= placement[1];
+        guest.usedRam -= placement[2];
+        count(guest, 1);
+        changed();
+    }
+
+    /** Stranded share of the free PEs, from 0 to 1. */
+    public double getIndex() {
+        return freePes > 0 ? (double) strandedPes / freePes : 0.0;
+    }
+
+    public long getStrandedPes() {
+        return strandedPes;
+    }
+
+    /** Stranded RAM, in MB. */
+    public long getStrandedRam() {
+        return strandedRam;
+    }
+
+    /** PEs stranded on guest {@code guestId}, 0 if it is unknown. */
+    public int getGuestStrandedPes(int guestId) {
+        Guest guest = guests.get(guestId);
+        return guest != null && isStranded(guest) ? guest.freePes() : 0;
+    }
+
+    /** RAM (MB) stranded on guest {@code guestId}, 0 if it is unknown. */
+    public long getGuestStrandedRam(int guestId) {
+        Guest guest = guests.get(guestId);
+        return guest != null && isStranded(guest) ? guest.freeRam() : 0;
+    }
+
+    /** PEs stranded on the guests placed on host {@code hostId}. */
+    public long getHostStrandedPes(int hostId) {
+        long[] stranded = new long[1];
+        guests.forEach((guestId, guest) -> {
+            if (guest.hostId == hostId && isStranded(guest)) stranded[0] += guest.freePes();
+        });
+        return stranded[0];
+    }
+
+    /** RAM (MB) stranded on the guests placed on host {@code hostId}. */
+    public long getHostStrandedRam(int hostId) {
+        long[] stranded = new long[1];
+        guests.forEach((guestId, guest) -> {
+            if (guest.hostId == hostId && isStranded(guest)) stranded[0] += guest.freeRam();
+        });
+        return stranded[0];
+    }
+
+    public long getFreePes() {
+        return freePes;
+    }
+
+    public long getFreeRam() {
+        return freeRam;
+    }
+
+    private boolean isStranded(Guest guest) {
+        return guest.freePes() < smallestPending;
+    }
+
+    private boolean removePending(int cloudletId) {
+        int[] pes = pendingPods.remove(cloudletId);
+        if (pes == null) return false;
+        pendingByPes[pes[0]]--;
+        return true;
+    }
+
+    private void count(Guest guest, int delta) {
+        int free = guest.freePes();
+        guestsByFreePes = grow(guestsByFreePes, free);
+        if (free >= ramByFreePes.length) {
+            ramByFreePes = Arrays.copyOf(ramByFreePes, guestsByFreePes.length);
+        }
+        guestsByFreePes[free] += delta;
+        ramByFreePes[free] += delta * guest.freeRam();
+    }
+
+    /** Recomputes the totals and records them if they moved. */
+    private void changed() {
+        smallestPending = Integer.MAX_VALUE;
+        if (!pendingPods.isEmpty()) {
+            for (int pes = 0; pes < pendingByPes.length; pes++) {
+                if (pendingByPes[pes] > 0) {
+                    smallestPending = pes;
+                    break;
+                }
+            }
+        }
+        long stranded = 0;
+        long strandedMemory = 0;
+        long free = 0;
+        long freeMemory = 0;
+        for (int pes = 0; pes < guestsByFreePes.length; pes++) {
+            free += (long) pes * guestsByFreePes[pes];
+            freeMemory += ramByFreePes[pes];
+            if (pes < smallestPending && smallestPending != Integer.MAX_VALUE) {
+                stranded += (long) pes * guestsByFreePes[pes];
+                strandedMemory += ramByFreePes[pes];
+            }
+        }
+        if (stranded == strandedPes && strandedMemory == strandedRam && free == freePes && freeMemory == freeRam) {
+            return;
+        }
+        strandedPes = stranded;
+        strandedRam = strandedMemory;
+        freePes = free;
+        freeRam = freeMemory;
+        metrics.record(CloudSim.clock(), getIndex(), strandedPes, strandedRam);
+    }
+
+    private static int[] grow(int[] counts, int index) {
+        return index < counts.length ? counts : Arrays.copyOf(counts, Math.max(index + 1, counts.length << 1));
+    }
+
+    private static final class Guest {
+        final int hostId;
+        final int pes;
+        final long ram;
+        int usedPes = 0;
+        long usedRam = 0;
+
+        Guest(int hostId, int pes, long ram) {
+            this.hostId = hostId;
+            this.pes = pes;
+            this.ram = ram;
+        }
+
+        int freePes() {
+            return Math.max(pes - usedPes, 0);
+        }
+
+        long freeRam() {
+            return Math.max(ram - usedRam, 0);
+        }
+    }
+}
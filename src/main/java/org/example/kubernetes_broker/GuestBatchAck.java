@@ -0,0 +1,11 @@
+package org.example.kubernetes_broker;
+
+/**
+ * Reply to a {@link CloudActionTagsEx#VM_CREATE_BATCH} request: one entry per guest, in request order.
+ *
+ * @param datacenterId the datacenter that placed the batch
+ * @param guestIds     the ids of the guests in the batch
+ * @param created      whether each guest was created
+ */
+public record GuestBatchAck(int datacenterId, int[] guestIds, boolean[] created) {
+}
@@ -0,0 +1,52 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Id-indexed view of a broker's guests, so scheduling decisions resolve their VM in O(1) instead of
+ * scanning with {@code VmList.getById}.
+ * <p>
+ * Created guests are tracked explicitly from create and destroy acks. Submitted guests are indexed lazily
+ * from the broker's guest list: the list is only ever appended to, so each lookup first indexes any guests
+ * added since the last one, and rebuilds from scratch if the list has shrunk.
+ */
+public class GuestRegistry {
+
+    private final Map<Integer, GuestEntity> created = new HashMap<>();
+    private final Map<Integer, GuestEntity> submitted = new HashMap<>();
+    private int submittedIndexed = 0;
+
+    public void guestCreated(GuestEntity guest) {
+        created.put(guest.getId(), guest);
+    }
+
+    public void guestDestroyed(int guestId) {
+        created.remove(guestId);
+    }
+
+    /** Returns the created (and not yet destroyed) guest with {@code guestId}, or null. */
+    public GuestEntity getCreated(int guestId) {
+        return created.get(guestId);
+    }
+
+    /** Returns the guest with {@code guestId} from {@code guestList}, the broker's submitted guests, or null. */
+    public GuestEntity getSubmitted(int guestId, List<? extends GuestEntity> guestList) {
+        if (guestList.size() < submittedIndexed) {
+            submitted.clear();
+            submittedIndexed = 0;
+        }
+        for (; submittedIndexed < guestList.size(); submittedIndexed++) {
+            GuestEntity guest = guestList.get(submittedIndexed);
+            submitted.putIfAbsent(guest.getId(), guest);
+        }
+        return submitted.get(guestId);
+    }
+
+    public int getCreatedCount() {
+        return created.size();
+    }
+}
@@ -0,0 +1,315 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.GuestEntity;
+import org.example.metrics.ControlPlaneMetrics;
+import org.example.metrics.EndpointLatency;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * {@link SchedulingBackend} backed by the Go k8s-cloudsim-adapter, which forwards every decision to a live
+ * (KWOK) Kubernetes scheduler. Every request's timings and sizes are recorded in {@link ControlPlaneMetrics}.
+ */
+public class HttpSchedulingBackend implements SchedulingBackend {
+
+    private final String controlPlaneUrl;
+    private final HttpClient httpClient;
+    private final JsonPayloadWriter payloadWriter = new JsonPayloadWriter();
+
+    private final EndpointLatency nodesLatency = ControlPlaneMetrics.endpoint("/nodes");
+    private final EndpointLatency nodeDeltaLatency = ControlPlaneMetrics.endpoint("/nodes/delta");
+    private final EndpointLatency schedulePodsLatency = ControlPlaneMetrics.endpoint("/schedule-pods");
+    private final EndpointLatency updateStateLatency = ControlPlaneMetrics.endpoint("/pods/update-state");
+    private final EndpointLatency resetLatency = ControlPlaneMetrics.endpoint("/reset");
+
+    public HttpSchedulingBackend(String controlPlaneUrl) {
+        this.controlPlaneUrl = controlPlaneUrl;
+        this.httpClient = HttpClient.newHttpClient();
+    }
+
+    @Override
+    public boolean syncAllNodes(Collection<? extends GuestEntity> nodes) {
+        // Sent even when empty: the adapter deletes every node missing from the payload
+        try {
+            long start = System.nanoTime();
+            int requestBytes = payloadWriter.writeGuests(nodes);
+            long serialized = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(controlPlaneUrl + "/nodes"))
+                    .header("Content-Type", "application/json")
+                    .POST(payloadWriter.bodyPublisher())
+                    .build();
+
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long received = System.nanoTime();
+            if (response.statusCode() == 200) {
+                nodesLatency.record(serialized - start, received - serialized, 0, requestBytes,
+                        response.body().length, nodes.size());
+                SimLog.info(() -> CloudSim.clock() + ": Synced active nodes: " + payloadWriter);
+                return true;
+            } else {
+                nodesLatency.recordFailure();
+                SimLog.error(() -> CloudSim.clock() + ": Failed to sync nodes: " + new String(response.body(), StandardCharsets.UTF_8));
+                return false;
+            }
+        } catch (IOException e) {
+            nodesLatency.recordFailure();
+            SimLog.error(() -> CloudSim.clock() + ": Error syncing nodes: " + e);
+            return false;
+        } catch (InterruptedException e) {
+            nodesLatency.recordFailure();
+            SimLog.error(() -> CloudSim.clock() + ": Interrupted syncing nodes");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public boolean syncNodeDelta(Collection<? extends GuestEntity> added, Collection<Integer> removedIds) {
+        try {
+            long start = System.nanoTime();
+            int requestBytes = payloadWriter.writeNodeDelta(added, removedIds);
+            long serialized = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(controlPlaneUrl + "/nodes/delta"))
+                    .header("Content-Type", "application/json")
+                    .POST(payloadWriter.bodyPublisher())
+                    .build();
+
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long received = System.nanoTime();
+            if (response.statusCode() == 200) {
+                nodeDeltaLatency.record(serialized - start, received - serialized, 0, requestBytes,
+                        response.body().length, added.size() + removedIds.size());
+                SimLog.info(() -> CloudSim.clock() + ": Synced node changes: " + payloadWriter);
+                return true;
+            } else {
+                nodeDeltaLatency.recordFailure();
+                SimLog.error(() -> CloudSim.clock() + ": Failed to sync node changes: " + new String(response.body(), StandardCharsets.UTF_8));
+                return false;
+            }
+        } catch (IOException e) {
+            nodeDeltaLatency.recordFailure();
+            SimLog.error(() -> CloudSim.clock() + ": Error syncing node changes: " + e);
+            return false;
+        } catch (InterruptedException e) {
+            nodeDeltaLatency.recordFailure();
+            SimLog.error(() -> CloudSim.clock() + ": Interrupted syncing node changes");
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Posts the batch to /schedule-pods and feeds the response to {@code onDecision} while it is still
+     * being read. An exception thrown by {@code onDecision} is not a failed request and propagates.
+     */
+    @Override
+    public int submitBatch(List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision) {
+        try {
+            long start = System.nanoTime();
+            int requestBytes = payloadWriter.writeCloudlets(cloudlets);
+            long serialized = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(controlPlaneUrl + "/schedule-pods"))
+                    .header("Content-Type", "application/json")
+                    .POST(payloadWriter.bodyPublisher())
+                    .build();
+
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            long received = System.nanoTime();
+
+            try (CountingInputStream body = new CountingInputStream(response.body())) {
+                if (response.statusCode() == 200) {
+                    int decisions = ScheduledPodReader.read(body, onDecision);
+                    schedulePodsLatency.record(serialized - start, received - serialized, System.nanoTime() - received,
+                            requestBytes, body.count, cloudlets.size());
+                    return decisions;
+                } else {
+                    schedulePodsLatency.recordFailure();
+                    SimLog.error(() -> "Failed to batch schedule cloudlets. HTTP " + response.statusCode());
+                    return -1;
+                }
+            }
+        } catch (IOException e) {
+            // Includes a response body the reader gave up on partway through
+            schedulePodsLatency.recordFailure();
+            SimLog.error(() -> "Error submitting cloudlets batch: " + e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            schedulePodsLatency.recordFailure();
+            SimLog.error(() -> "Interrupted submitting cloudlets batch");
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    /**
+     * Posts the finished cloudlets to /pods/update-state and streams any pods the scheduler placed in
+     * their stead to {@code onDecision}.
+     */
+    @Override
+    public int completeAndReschedule(List<? extends Cloudlet> finished, Consumer<ScheduledPod> onDecision) {
+        try {
+            long start = System.nanoTime();
+            int requestBytes = payloadWriter.writeCloudlets(finished);
+            long serialized = System.nanoTime();
+            HttpRequest request = HttpRequest.newBuilder()
+                    .uri(URI.create(controlPlaneUrl + "/pods/update-state"))
+                    .header("Content-Type", "application/json")
+                    .POST(payloadWriter.bodyPublisher())
+                    .build();
+
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            long received = System.nanoTime();
+
+            try (CountingInputStream body = new CountingInputStream(response.body())) {
+                if (response.statusCode() == 200) {
+                    SimLog.info("Cloudlet deletion and wait successful. Processing response...");
+                    int decisions = ScheduledPodReader.read(body, onDecision);
+                    updateStateLatency.record(serialized - start, received - serialized, System.nanoTime() - received,
+                            requestBytes, body.count, finished.size());
+                    return decisions;
+                } else {
+                    updateStateLatency.recordFailure();
+                    String responseBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+                    SimLog.error(() -> "Failed to delete cloudlet. Status: " + response.statusCode() + " Body: " + responseBody);
+                    return -1;
+                }
+            }
+        } catch (IOException e) {
+            // Includes a response body the reader gave up on partway through
+            updateStateLatency.recordFailure();
+            SimLog.error(() -> "Error during cloudlet deletion request: " + e.getMessage());
+            return -1;
+        } catch (InterruptedException e) {
+            updateStateLatency.recordFailure();
+            SimLog.error(() -> "Interrupted during cloudlet deletion request");
+            Thread.currentThread().interrupt();
+            return -1;
+        }
+    }
+
+    @Override
+    public CompletableFuture<List<ScheduledPod>> submitBatchAsync(List<? extends Cloudlet> cloudlets) {
+        return postCloudletsAsync("/schedule-pods", schedulePodsLatency, cloudlets);
+    }
+
+    @Override
+    public CompletableFuture<List<ScheduledPod>> completeAndRescheduleAsync(List<? extends Cloudlet> finished) {
+        return postCloudletsAsync("/pods/update-state", updateStateLatency, finished);
+    }
+
+    /**
+     * Serialises {@code cloudlets} on the calling thread, then sends and parses on the client's executor.
+     * The payload is copied because the writer may be reused before the request goes out.
+     */
+    private CompletableFuture<List<ScheduledPod>> postCloudletsAsync(String path, EndpointLatency latency,
+                                                                     List<? extends Cloudlet> cloudlets) {
+        long start = System.nanoTime();
+        int requestBytes;
+        HttpRequest request;
+        try {
+            requestBytes = payloadWriter.writeCloudlets(cloudlets);
+            request = HttpRequest.newBuilder()
+                    .uri(URI.create(controlPlaneUrl + path))
+                    .header("Content-Type", "application/json")
+                    .POST(payloadWriter.copyBodyPublisher())
+                    .build();
+        } catch (IOException e) {
+            latency.recordFailure();
+            return CompletableFuture.failedFuture(e);
+        }
+        long serialized = System.nanoTime();
+        int batchSize = cloudlets.size();
+
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream()).thenApply(response -> {
+            long received = System.nanoTime();
+            try (CountingInputStream body = new CountingInputStream(response.body())) {
+                if (response.statusCode() != 200) {
+                    throw new IOException(path + " returned HTTP " + response.statusCode() + ": "
+                            + new String(body.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                List<ScheduledPod> decisions = new ArrayList<>();
+                ScheduledPodReader.read(body, decisions::add);
+                latency.record(serialized - start, received - serialized, System.nanoTime() - received,
+                        requestBytes, body.count, batchSize);
+                return decisions;
+            } catch (IOException e) {
+                latency.recordFailure();
+                throw new UncheckedIOException(e);
+            }
+        }).whenComplete((decisions, error) -> {
+            if (error != null && !(error.getCause() instanceof UncheckedIOException)) {
+                latency.recordFailure();
+            }
+        });
+    }
+
+    @Override
+    public void reset() {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(controlPlaneUrl + "/reset"))
+                .DELETE()
+                .build();
+
+        try {
+            long start = System.nanoTime();
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            long received = System.nanoTime();
+            if (response.statusCode() == 200) {
+                resetLatency.record(0, received - start, 0, 0, response.body().length, 0);
+                SimLog.info("Sent reset request to Control Plane.");
+            } else {
+                resetLatency.recordFailure();
+                SimLog.error(() -> "Failed to reset Control Plane. Status: " + response.statusCode()
+                        + ", Body: " + new String(response.body(), StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            resetLatency.recordFailure();
+            SimLog.error(() -> "Error sending reset request to Control Plane: " + e.getMessage());
+        } catch (InterruptedException e) {
+            resetLatency.recordFailure();
+            SimLog.error(() -> "Interrupted sending reset request to Control Plane");
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /** Counts the response bytes the reader consumes. */
+    private static final class CountingInputStream extends FilterInputStream {
+        long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) count++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (n > 0) count += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.util.ArrayDeque;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * {@link SchedulingBackend} that places pods inside the simulation process, without a control plane.
+ * <p>
+ * It reproduces the parts of kube-scheduler's default profile that matter for the nodes and pods the
+ * adapter creates:
+ * <ul>
+ *     <li>NodeResourcesFit filter: CPU, memory and the 110 pods per node limit.</li>
+ *     <li>NodeResourcesFit LeastAllocated score over CPU and memory, using the scheduler's non-zero
+ *     defaults (100m CPU, 200Mi memory) for resources a pod does not request.</li>
+ *     <li>NodeResourcesBalancedAllocation score over CPU and memory, using the actual requests.</li>
+ *     <li>Ties between the best nodes broken at random, as the scheduler's selectHost does, with a
+ *     seeded {@link Random} so runs are reproducible.</li>
+ * </ul>
+ * Like the adapter, a node has {@code pes} CPUs and {@code ram} MiB of memory, and a pod requests
+ * {@code pes} CPUs and no memory. Pods that fit nowhere are reported as Unschedulable and retried, in
+ * submission order, whenever a batch is submitted or pods complete. Node sampling
+ * (percentageOfNodesToScore) is not modelled; every feasible node is scored.
+ */
+public class InProcessSchedulingBackend implements SchedulingBackend {
+
+    static final int MAX_NODE_SCORE = 100;
+    static final int MAX_PODS_PER_NODE = 110;
+    static final long DEFAULT_MILLI_CPU_REQUEST = 100;
+    static final long DEFAULT_MEMORY_REQUEST_MIB = 200;
+
+    private final Map<Integer, Node> nodes = new LinkedHashMap<>();
+    private final Map<Integer, Pod> boundPods = new HashMap<>();
+    private final ArrayDeque<Pod> pendingPods = new ArrayDeque<>();
+    private final long seed;
+    private Random random;
+
+    public InProcessSchedulingBackend() {
+        this(0L);
+    }
+
+    public InProcessSchedulingBackend(long seed) {
+        this.seed = seed;
+        this.random = new Random(seed);
+    }
+
+    @Override
+    public boolean syncAllNodes(Collection<? extends GuestEntity> guests) {
+        Map<Integer, Node> previous = new HashMap<>(nodes);
+        nodes.clear();
+        for (GuestEntity guest : guests) {
+            Node node = previous.get(guest.getId());
+            nodes.put(guest.getId(), node != null ? node : new Node(guest));
+        }
+        return true;
+    }
+
+    @Override
+    public boolean syncNodeDelta(Collection<? extends GuestEntity> added, Collection<Integer> removedIds) {
+        for (int id : removedIds) {
+            nodes.remove(id);
+        }
+        for (GuestEntity guest : added) {
+            nodes.putIfAbsent(guest.getId(), new Node(guest));
+        }
+        return true;
+    }
+
+    @Override
+    public int submitBatch(List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision) {
+        int decisions = schedulePendingPods(onDecision);
+        for (Cloudlet cloudlet : cloudlets) {
+            Pod pod = new Pod(cloudlet);
+            Node node = selectNode(pod);
+            if (node != null) {
+                bind(pod, node);
+                onDecision.accept(new ScheduledPod(pod.id, "Scheduled", node.id, node.name));
+            } else {
+                pendingPods.add(pod);
+                onDecision.accept(new ScheduledPod(pod.id, "Unschedulable", -1, null));
+            }
+            decisions++;
+        }
+        return decisions;
+    }
+
+    /** Releases the finished pods' requests and reports the pending pods that now fit somewhere. */
+    @Override
+    public int completeAndReschedule(List<? extends Cloudlet> finished, Consumer<ScheduledPod> onDecision) {
+        for (Cloudlet cloudlet : finished) {
+            Pod pod = boundPods.remove(cloudlet.getCloudletId());
+            if (pod == null) continue;
+            Node node = nodes.get(pod.nodeId);
+            if (node != null) {
+                node.release(pod);
+            }
+        }
+        return schedulePendingPods(onDecision);
+    }
+
+    @Override
+    public void reset() {
+        nodes.clear();
+        boundPods.clear();
+        pendingPods.clear();
+        random = new Random(seed);
+        SimLog.info("Reset in-process scheduler.");
+    }
+
+    private int schedulePendingPods(Consumer<ScheduledPod> onDecision) {
+        int scheduled = 0;
+        Iterator<Pod> it = pendingPods.iterator();
+        while (it.hasNext()) {
+            Pod pod = it.next();
+            Node node = selectNode(pod);
+            if (node == null) continue;
+            it.remove();
+            bind(pod, node);
+            onDecision.accept(new ScheduledPod(pod.id, "Scheduled", node.id, node.name));
+            scheduled++;
+        }
+        return scheduled;
+    }
+
+    /** Returns the highest-scoring feasible node, or null if the pod fits on none. */
+    private Node selectNode(Pod pod) {
+        Node selected = null;
+        long bestScore = -1;
+        int ties = 0;
+        for (Node node : nodes.values()) {
+            if (!node.fits(pod)) continue;
+            long score = leastAllocatedScore(node, pod) + balancedAllocationScore(node, pod);
+            if (score > bestScore) {
+                bestScore = score;
+                selected = node;
+                ties = 1;
+            } else if (score == bestScore) {
+                // Reservoir sampling over the tied nodes, as in kube-scheduler's selectHost
+                ties++;
+                if (random.nextInt(ties) == 0) {
+                    selected = node;
+                }
+            }
+        }
+        return selected;
+    }
+
+    private void bind(Pod pod, Node node) {
+        pod.nodeId = node.id;
+        node.allocate(pod);
+        boundPods.put(pod.id, pod);
+    }
+
+    static long leastAllocatedScore(Node node, Pod pod) {
+        long cpu = leastRequestedScore(node.nonZeroMilliCpu + pod.nonZeroMilliCpu(), node.allocatableMilliCpu);
+        long memory = leastRequestedScore(node.nonZeroMemoryMiB + pod.nonZeroMemoryMiB(), node.allocatableMemoryMiB);
+        return (cpu + memory) / 2;
+    }
+
+    static long leastRequestedScore(long requested, long capacity) {
+        if (capacity == 0 || requested > capacity) {
+            return 0;
+        }
+        return (capacity - requested) * MAX_NODE_SCORE / capacity;
+    }
+
+    static long balancedAllocationScore(Node node, Pod pod) {
+        if (node.allocatableMilliCpu == 0 || node.allocatableMemoryMiB == 0) {
+            return MAX_NODE_SCORE;
+        }
+        double cpuFraction = Math.min(1.0,
+                (double) (node.requestedMilliCpu + pod.milliCpu) / node.allocatableMilliCpu);
+        double memoryFraction = Math.min(1.0,
+                (double) (node.requestedMemoryMiB + pod.memoryMiB) / node.allocatableMemoryMiB);
+        double std = Math.abs(cpuFraction - memoryFraction) / 2;
+        return (long) ((1 - std) * MAX_NODE_SCORE);
+    }
+
+    static final class Node {
+        final int id;
+        final String name;
+        final long allocatableMilliCpu;
+        final long allocatableMemoryMiB;
+        long requestedMilliCpu;
+        long requestedMemoryMiB;
+        long nonZeroMilliCpu;
+        long nonZeroMemoryMiB;
+        int pods;
+
+        Node(GuestEntity guest) {
+            this.id = guest.getId();
+            this.name = "csnode-" + guest.getId();
+            this.allocatableMilliCpu = guest.getNumberOfPes() * 1000L;
+            this.allocatableMemoryMiB = guest.getRam();
+        }
+
+        boolean fits(Pod pod) {
+            return pods + 1 <= MAX_PODS_PER_NODE
+                    && (pod.milliCpu == 0 || requestedMilliCpu + pod.milliCpu <= allocatableMilliCpu)
+                    && (pod.memoryMiB == 0 || requestedMemoryMiB + pod.memoryMiB <= allocatableMemoryMiB);
+        }
+
+        void allocate(Pod pod) {
+            requestedMilliCpu += pod.milliCpu;
+            requestedMemoryMiB += pod.memoryMiB;
+            nonZeroMilliCpu += pod.nonZeroMilliCpu();
+            nonZeroMemoryMiB += pod.nonZeroMemoryMiB();
+            pods++;
+        }
+
+        void release(Pod pod) {
+            requestedMilliCpu -= pod.milliCpu;
+            requestedMemoryMiB -= pod.memoryMiB;
+            nonZeroMilliCpu -= pod.nonZeroMilliCpu();
+            nonZeroMemoryMiB -= pod.nonZeroMemoryMiB();
+            pods--;
+        }
+    }
+
+    static final class Pod {
+        final int id;
+        final long milliCpu;
+        final long memoryMiB;
+        int nodeId = -1;
+
+        Pod(Cloudlet cloudlet) {
+            this.id = cloudlet.getCloudletId();
+            this.milliCpu = cloudlet.getNumberOfPes() * 1000L;
+            this.memoryMiB = 0;
+        }
+
+        long nonZeroMilliCpu() {
+            return milliCpu != 0 ? milliCpu : DEFAULT_MILLI_CPU_REQUEST;
+        }
+
+        long nonZeroMemoryMiB() {
+            return memoryMiB != 0 ? memoryMiB : DEFAULT_MEMORY_REQUEST_MIB;
+        }
+    }
+}
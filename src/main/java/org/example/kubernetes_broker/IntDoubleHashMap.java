@@ -0,0 +1,97 @@
+package org.example.kubernetes_broker;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code int} keys to primitive {@code double} values. It shares
+ * {@code IntKeyTable}'s probing and removal with {@link IntObjectHashMap}, with a {@code double[]} of values
+ * and a {@code boolean[]} of used slots in place of the object array. An entry costs a key, a value and an
+ * occupancy flag, with no boxed {@link Double}.
+ * <p>
+ * Not thread-safe.
+ */
+public class IntDoubleHashMap extends IntKeyTable {
+
+    private double[] values;
+    private boolean[] used;
+
+    public IntDoubleHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntDoubleHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /** Returns the value of {@code key}, or {@code defaultValue} if it is not mapped. */
+    public double get(int key, double defaultValue) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : defaultValue;
+    }
+
+    public void put(int key, double value) {
+        int slot = findForInsert(key);
+        if (slot >= 0) {
+            values[slot] = value;
+            return;
+        }
+        slot = -(slot + 1);
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (added()) {
+            rehash(used.length << 1);
+        }
+    }
+
+    /** Removes {@code key} and returns its value, or {@code defaultValue} if it was not mapped. */
+    public double remove(int key, double defaultValue) {
+        int slot = find(key);
+        if (slot < 0) return defaultValue;
+        double value = values[slot];
+        removeAt(slot);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    @Override
+    boolean isUsed(int slot) {
+        return used[slot];
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+        used[to] = true;
+        used[from] = false;
+    }
+
+    @Override
+    void freeSlot(int slot) {
+        used[slot] = false;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        double[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (!oldUsed[i]) continue;
+            int slot = emptySlot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+            used[slot] = true;
+        }
+    }
+
+    private void allocate(int capacity) {
+        values = new double[capacity];
+        used = new boolean[capacity];
+        allocateKeys(capacity);
+    }
+}
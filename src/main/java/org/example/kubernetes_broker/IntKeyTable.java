@@ -0,0 +1,133 @@
+package org.example.kubernetes_broker;
+
+/**
+ * Open-addressing table of primitive {@code int} keys, shared by {@link IntObjectHashMap} and
+ * {@link IntDoubleHashMap}: the hashing, linear probing and backward-shift deletion live here, and the maps
+ * only keep their value arrays and say which slots are in use. Keys are scrambled with a multiplicative
+ * (Fibonacci) hash so that runs of sequential ids do not form long probe runs.
+ * <p>
+ * Not thread-safe.
+ */
+abstract class IntKeyTable {
+
+    static final int MIN_CAPACITY = 16;
+    static final float LOAD_FACTOR = 0.75f;
+
+    int[] keys;
+    int mask;
+    int size = 0;
+    private int resizeAt;
+
+    /** Returns true if {@code slot} holds an entry. */
+    abstract boolean isUsed(int slot);
+
+    /** Moves the value in slot {@code from} to the empty slot {@code to}, leaving {@code from} empty. */
+    abstract void moveValue(int from, int to);
+
+    /** Empties {@code slot}. */
+    abstract void freeSlot(int slot);
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(int key) {
+        return find(key) >= 0;
+    }
+
+    /** Returns the keys in a new array, in unspecified order. */
+    public int[] keys() {
+        int[] result = new int[size];
+        int n = 0;
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (isUsed(slot)) {
+                result[n++] = keys[slot];
+            }
+        }
+        return result;
+    }
+
+    /** Returns the slot holding {@code key}, or -1 if it is not mapped. */
+    final int find(int key) {
+        int slot = slot(key);
+        while (isUsed(slot)) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the slot holding {@code key}, or {@code -(slot + 1)} for the empty slot it would be inserted
+     * into.
+     */
+    final int findForInsert(int key) {
+        int slot = slot(key);
+        while (isUsed(slot)) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -(slot + 1);
+    }
+
+    /** Returns the first empty slot of {@code key}'s probe run, for reinserting entries into a fresh table. */
+    final int emptySlot(int key) {
+        int slot = slot(key);
+        while (isUsed(slot)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /** Counts an entry just stored in an empty slot, and returns true if the table should now grow. */
+    final boolean added() {
+        return ++size > resizeAt;
+    }
+
+    /**
+     * Empties {@code slot} and shifts the following entries of its probe run back, so no tombstone is left.
+     * Only entries after {@code slot} move.
+     */
+    final void removeAt(int slot) {
+        freeSlot(slot);
+        size--;
+
+        int gap = slot;
+        int next = (slot + 1) & mask;
+        while (isUsed(next)) {
+            int home = slot(keys[next]);
+            // The entry can fill the gap if the gap lies between its home slot and where it is now
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                moveValue(next, gap);
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+    }
+
+    final int slot(int key) {
+        int h = key * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+    /** Allocates the key array for {@code capacity} slots, a power of two; the map allocates its values. */
+    final void allocateKeys(int capacity) {
+        keys = new int[capacity];
+        mask = capacity - 1;
+        resizeAt = Math.min(capacity - 1, (int) (capacity * LOAD_FACTOR));
+    }
+
+    static int tableSizeFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 1) / LOAD_FACTOR) + 1;
+        int capacity = MIN_CAPACITY;
+        while (capacity < needed) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+}
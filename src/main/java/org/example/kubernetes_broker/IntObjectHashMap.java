@@ -0,0 +1,155 @@
+package org.example.kubernetes_broker;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing hash map from primitive {@code int} keys to non-null values, for the broker's per-cloudlet
+ * bookkeeping. Keys and values live in two parallel arrays, so an entry costs two array slots instead of a
+ * boxed key and a node, and lookups never allocate.
+ * <p>
+ * Probing and removal are {@code IntKeyTable}'s: removals shift the following entries back instead of leaving
+ * tombstones, so {@link #removeIf} can drop entries while it iterates, without an iterator object or a second
+ * list. A slot is in use while its value is non-null. Iteration order is unspecified.
+ * <p>
+ * Not thread-safe.
+ */
+public class IntObjectHashMap<V> extends IntKeyTable {
+
+    private V[] values;
+
+    public IntObjectHashMap() {
+        this(MIN_CAPACITY);
+    }
+
+    public IntObjectHashMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    public interface EntryPredicate<V> {
+        boolean test(int key, V value);
+    }
+
+    public interface EntryConsumer<V> {
+        void accept(int key, V value);
+    }
+
+    public V get(int key) {
+        int slot = find(key);
+        return slot >= 0 ? values[slot] : null;
+    }
+
+    public V getOrDefault(int key, V defaultValue) {
+        V value = get(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /** Maps {@code key} to {@code value} and returns the previous value, or null. */
+    public V put(int key, V value) {
+        if (value == null) {
+            throw new NullPointerException("IntObjectHashMap does not accept null values");
+        }
+        int slot = findForInsert(key);
+        if (slot >= 0) {
+            V previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        slot = -(slot + 1);
+        keys[slot] = key;
+        values[slot] = value;
+        if (added()) {
+            rehash(values.length << 1);
+        }
+        return null;
+    }
+
+    /** Removes {@code key} and returns its value, or null if it was not mapped. */
+    public V remove(int key) {
+        int slot = find(key);
+        if (slot < 0) return null;
+        V value = values[slot];
+        removeAt(slot);
+        return value;
+    }
+
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    public void forEach(EntryConsumer<? super V> consumer) {
+        for (int slot = 0; slot < values.length; slot++) {
+            V value = values[slot];
+            if (value != null) {
+                consumer.accept(keys[slot], value);
+            }
+        }
+    }
+
+    /**
+     * Visits every entry once and removes those for which {@code predicate} returns true. The predicate must
+     * not modify this map.
+     *
+     * @return the number of entries removed
+     */
+    public int removeIf(EntryPredicate<? super V> predicate) {
+        if (size == 0) return 0;
+
+        // Starting just after an empty slot means no probe run wraps past the start, so entries shifted back
+        // by a removal are always ones that have not been visited yet.
+        int start = 0;
+        while (values[start] != null) {
+            start++;
+        }
+
+        int removed = 0;
+        int slot = (start + 1) & mask;
+        int visited = 0;
+        while (visited < mask) {
+            V value = values[slot];
+            if (value != null && predicate.test(keys[slot], value)) {
+                removeAt(slot);
+                removed++;
+                continue; // the slot may now hold a shifted, unvisited entry
+            }
+            slot = (slot + 1) & mask;
+            visited++;
+        }
+        return removed;
+    }
+
+    @Override
+    boolean isUsed(int slot) {
+        return values[slot] != null;
+    }
+
+    @Override
+    void moveValue(int from, int to) {
+        values[to] = values[from];
+        values[from] = null;
+    }
+
+    @Override
+    void freeSlot(int slot) {
+        values[slot] = null;
+    }
+
+    private void rehash(int capacity) {
+        int[] oldKeys = keys;
+        V[] oldValues = values;
+        allocate(capacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            V value = oldValues[i];
+            if (value == null) continue;
+            int slot = emptySlot(oldKeys[i]);
+            keys[slot] = oldKeys[i];
+            values[slot] = value;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void allocate(int capacity) {
+        values = (V[]) new Object[capacity];
+        allocateKeys(capacity);
+    }
+}
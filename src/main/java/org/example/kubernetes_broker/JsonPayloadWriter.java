@@ -0,0 +1,140 @@
+package org.example.kubernetes_broker;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.Vm;
+import org.cloudbus.cloudsim.container.core.Container;
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+/**
+ * Streams cloudlet (pod) and guest (node) batches straight into a reusable byte buffer,
+ * without building an intermediate Jackson tree. The field order and value types match
+ * what the adapter has always received from the ObjectMapper-based serialisation.
+ * <p>
+ * One writer belongs to one broker and is not thread-safe; the underlying {@link JsonFactory}
+ * is shared and is. The buffer is overwritten by the next write, so a body publisher obtained
+ * from {@link #bodyPublisher()} must be consumed before the writer is used again.
+ */
+public class JsonPayloadWriter {
+
+    static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private final PayloadBuffer buffer = new PayloadBuffer(8192);
+
+    /** Writes {@code cloudlets} as the JSON array expected by /schedule-pods and /pods/update-state. */
+    public int writeCloudlets(Collection<? extends Cloudlet> cloudlets) throws IOException {
+        buffer.reset();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            gen.writeStartArray();
+            for (Cloudlet cloudlet : cloudlets) {
+                writeCloudlet(gen, cloudlet);
+            }
+            gen.writeEndArray();
+        }
+        return buffer.size();
+    }
+
+    /** Writes {@code guests} as the JSON array expected by /nodes. */
+    public int writeGuests(Collection<? extends GuestEntity> guests) throws IOException {
+        buffer.reset();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            gen.writeStartArray();
+            for (GuestEntity guest : guests) {
+                writeGuest(gen, guest);
+            }
+            gen.writeEndArray();
+        }
+        return buffer.size();
+    }
+
+    /** Writes a /nodes/delta body: {@code {"add":[node...],"remove":[id...]}}. */
+    public int writeNodeDelta(Collection<? extends GuestEntity> added, Collection<Integer> removedIds) throws IOException {
+        buffer.reset();
+        try (JsonGenerator gen = JSON_FACTORY.createGenerator(buffer, JsonEncoding.UTF8)) {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("add");
+            for (GuestEntity guest : added) {
+                writeGuest(gen, guest);
+            }
+            gen.writeEndArray();
+            gen.writeArrayFieldStart("remove");
+            for (int id : removedIds) {
+                gen.writeNumber(id);
+            }
+            gen.writeEndArray();
+            gen.writeEndObject();
+        }
+        return buffer.size();
+    }
+
+    static void writeCloudlet(JsonGenerator gen, Cloudlet cloudlet) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", cloudlet.getCloudletId());
+        gen.writeStringField("name", "cloudlet-" + cloudlet.getCloudletId());
+        gen.writeNumberField("length", cloudlet.getCloudletLength());
+        gen.writeNumberField("pes", cloudlet.getNumberOfPes());
+        gen.writeNumberField("fileSize", cloudlet.getCloudletFileSize());
+        gen.writeNumberField("outputSize", cloudlet.getCloudletOutputSize());
+        gen.writeNumberField("utilizationCpu", cloudlet.getUtilizationModelCpu().getUtilization(0));
+        gen.writeNumberField("utilizationRam", cloudlet.getUtilizationModelRam().getUtilization(0));
+        gen.writeNumberField("utilizationBw", cloudlet.getUtilizationModelBw().getUtilization(0));
+        gen.writeEndObject();
+    }
+
+    static void writeGuest(JsonGenerator gen, GuestEntity guest) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("id", guest.getId());
+        gen.writeNumberField("mipsAvailable", (int) guest.getMips());
+        gen.writeNumberField("ramAvailable", guest.getRam());
+        gen.writeNumberField("pes", guest.getNumberOfPes());
+        gen.writeNumberField("bw", guest.getBw());
+        gen.writeNumberField("size", guest.getSize());
+        gen.writeStringField("type", guest instanceof Vm ? "vm" : "container");
+        gen.writeStringField("name", nodeName(guest));
+        gen.writeEndObject();
+    }
+
+    static String nodeName(GuestEntity guest) {
+        return guest instanceof Vm ? "vm-" + guest.getId()
+                : guest instanceof Container ? "container-" + guest.getId()
+                : "guest-" + guest.getId();
+    }
+
+    /** Publishes the last written payload without copying it. */
+    public HttpRequest.BodyPublisher bodyPublisher() {
+        return buffer.bodyPublisher();
+    }
+
+    /** Publishes a copy of the last written payload, for requests that may be sent after the next write. */
+    public HttpRequest.BodyPublisher copyBodyPublisher() {
+        return HttpRequest.BodyPublishers.ofByteArray(buffer.toByteArray());
+    }
+
+    public int size() {
+        return buffer.size();
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString(StandardCharsets.UTF_8);
+    }
+
+    /** ByteArrayOutputStream that hands its backing array to the HTTP client instead of copying it. */
+    private static final class PayloadBuffer extends ByteArrayOutputStream {
+        PayloadBuffer(int initialCapacity) {
+            super(initialCapacity);
+        }
+
+        HttpRequest.BodyPublisher bodyPublisher() {
+            return HttpRequest.BodyPublishers.ofByteArray(buf, 0, count);
+        }
+    }
+}
@@ -1,46 +1,91 @@
 package org.example.kubernetes_broker;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import org.cloudbus.cloudsim.*;
 import org.cloudbus.cloudsim.EX.DatacenterBrokerEX;
-import org.cloudbus.cloudsim.container.core.Container;
 import org.cloudbus.cloudsim.core.*;
-import org.cloudbus.cloudsim.lists.VmList;
+import org.example.metrics.CloudletMetrics;
+import org.example.metrics.ControlPlaneMetrics;
+import org.example.metrics.FragmentationMetrics;
+import org.example.metrics.SchedulerMetrics;
 
+import java.io.Closeable;
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class Live_Kubernetes_Broker_Ex extends DatacenterBrokerEX {
 
     private static final String CONTROL_PLANE_URL = "http://localhost:8080";
-    private final HttpClient httpClient;
+    // Longest a measured-delay decision event waits for its response before re-posting itself
+    private static final long RESPONSE_POLL_NANOS = 1_000_000L;
+    public static final String RECORD_PROPERTY = "kubernetes_broker.record";
+    public static final String REPLAY_PROPERTY = "kubernetes_broker.replay";
+    private SchedulingBackend schedulingBackend;
+    private final NodeSyncTracker nodeSync = new NodeSyncTracker(100);
+    private final GuestRegistry guestRegistry = new GuestRegistry();
+    private final FragmentationTracker fragmentation = new FragmentationTracker(getName());
     private int guestIndex = 0;
 
     //Map of
-    HashMap<Integer,Cloudlet> cloudletsSubmittedToMiddle;
-    HashMap<Integer,Cloudlet> cloudletsReadyForCloudsim;
+    IntObjectHashMap<Cloudlet> cloudletsSubmittedToMiddle;
+    IntObjectHashMap<Cloudlet> cloudletsReadyForCloudsim;
+    // Ids of cloudletsReadyForCloudsim's entries, walked in id order without allocating; kept in step with it
+    private final BitSet readyCloudletIds = new BitSet();
+
+    // Time each cloudlet was handed to the control plane, until it returns
+    private final IntDoubleHashMap submitTimes = new IntDoubleHashMap();
+
+    // Cloudlet returns waiting to be reported to the control plane in one batch
+    private final List<SimEvent> pendingCompletions = new ArrayList<>();
+    private double completionBatchWindow = 0.0;
+
+    // Null while scheduling round trips block the event loop
+    private DecisionDelay asyncDecisionDelay = null;
+    private int decisionsInFlight = 0;
+
+    // Checkpoint being restored; guests are not created until the datacenter has put them back
+    private SimulationCheckpoint restoring = null;
 
     public Live_Kubernetes_Broker_Ex(String name) throws Exception {
-        super(name, -1.0F);
-        this.httpClient = HttpClient.newHttpClient();
-        this.cloudletsSubmittedToMiddle = new HashMap<Integer,Cloudlet>();
-        this.cloudletsReadyForCloudsim = new HashMap<Integer,Cloudlet>();
+        this(name, -1.0F);
     }
 
     public Live_Kubernetes_Broker_Ex(String name, double lifeLength) throws Exception {
+        this(name, lifeLength, defaultSchedulingBackend());
+    }
+
+    public Live_Kubernetes_Broker_Ex(String name, double lifeLength, SchedulingBackend schedulingBackend) throws Exception {
         super(name,lifeLength);
-        this.httpClient = HttpClient.newHttpClient();
-        this.cloudletsSubmittedToMiddle = new HashMap<Integer,Cloudlet>();
-        this.cloudletsReadyForCloudsim = new HashMap<Integer,Cloudlet>();
+        this.schedulingBackend = schedulingBackend;
+        this.cloudletsSubmittedToMiddle = new IntObjectHashMap<>();
+        this.cloudletsReadyForCloudsim = new IntObjectHashMap<>();
+    }
+
+    /**
+     * The control plane at {@link #CONTROL_PLANE_URL}, unless a system property says otherwise:
+     * {@value #REPLAY_PROPERTY} replays a scheduling log instead of contacting the control plane, and
+     * {@value #RECORD_PROPERTY} records every call to a scheduling log.
+     */
+    private static SchedulingBackend defaultSchedulingBackend() throws IOException {
+        String replayLog = System.getProperty(REPLAY_PROPERTY);
+        if (replayLog != null) {
+            return new ReplaySchedulingBackend(Path.of(replayLog));
+        }
+        SchedulingBackend backend = new HttpSchedulingBackend(CONTROL_PLANE_URL);
+        String recordLog = System.getProperty(RECORD_PROPERTY);
+        if (recordLog != null) {
+            backend = new RecordingSchedulingBackend(backend, Path.of(recordLog));
+        }
+        return backend;
     }
 
     @Override
@@ -48,389 +93,713 @@ public class Live_Kubernetes_Broker_Ex extends DatacenterBrokerEX {
         DatacenterCharacteristics characteristics = (DatacenterCharacteristics) ev.getData();
         getDatacenterCharacteristicsList().put(characteristics.getId(), characteristics);
 
-        if (getDatacenterCharacteristicsList().size() == getDatacenterIdsList().size()) {
+        if (restoring == null && getDatacenterCharacteristicsList().size() == getDatacenterIdsList().size()) {
             createVmsInDatacenter(getDatacenterIdsList().getFirst());
         }
     }
 
+    /**
+     * Requests every guest that has not been placed yet from {@code datacenterId}. A
+     * {@link PowerDatacenterCustom} receives the {@link PowerVmCustom}s as one
+     * {@link CloudActionTagsEx#VM_CREATE_BATCH} and answers with a single {@link GuestBatchAck}; other guests
+     * and datacenters get one VM_CREATE_ACK request per guest, as before.
+     */
+    @Override
+    protected void createVmsInDatacenter(int datacenterId) {
+        if (!(CloudSim.getEntity(datacenterId) instanceof PowerDatacenterCustom)) {
+            super.createVmsInDatacenter(datacenterId);
+            return;
+        }
+
+        List<PowerVmCustom> batch = new ArrayList<>();
+        int requestedGuests = 0;
+        for (GuestEntity guest : getGuestList()) {
+            if (getVmsToDatacentersMap().containsKey(guest.getId())) continue;
+            if (guest instanceof PowerVmCustom pvm) {
+                batch.add(pvm);
+            } else {
+                sendNow(datacenterId, CloudActionTags.VM_CREATE_ACK, guest);
+            }
+            requestedGuests++;
+        }
+        if (!batch.isEmpty()) {
+            int batchSize = batch.size();
+            SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Trying to create " + batchSize
+                    + " PowerVmCustom(s) in " + CloudSim.getEntity(datacenterId).getName());
+            sendNow(datacenterId, CloudActionTagsEx.VM_CREATE_BATCH, batch);
+        }
+
+        getDatacenterRequestedIdsList().add(datacenterId);
+        setVmsRequested(requestedGuests);
+        setVmsAcks(0);
+    }
+
     @Override
     protected void processVmCreateAck(SimEvent ev) {
         int[] data = (int[]) ev.getData();
-        int datacenterId = data[0];
-        int vmId = data[1];
-        int result = data[2];
+        guestCreationAcknowledged(data[0], data[1], data[2] == CloudSimTags.TRUE);
+        if (getVmsRequested() == getVmsAcks()) {
+            allGuestsAcknowledged();
+        }
+    }
 
-        GuestEntity guest = VmList.getById(getGuestList(), vmId);
+    private void processVmCreateBatchAck(SimEvent ev) {
+        GuestBatchAck ack = (GuestBatchAck) ev.getData();
+        for (int i = 0; i < ack.guestIds().length; i++) {
+            guestCreationAcknowledged(ack.datacenterId(), ack.guestIds()[i], ack.created()[i]);
+        }
+        if (getVmsRequested() == getVmsAcks()) {
+            allGuestsAcknowledged();
+        }
+    }
+
+    private void guestCreationAcknowledged(int datacenterId, int vmId, boolean created) {
+        GuestEntity guest = guestRegistry.getSubmitted(vmId, getGuestList());
 
-        if (result == CloudSimTags.TRUE) {
+        if (created) {
             getVmsToDatacentersMap().put(vmId, datacenterId);
             getGuestsCreatedList().add(guest);
-            Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": ", guest.getClassName(), " #", vmId,
-                    " has been created in Datacenter #", datacenterId, ", ", guest.getHost().getClassName(), " #",
-                    guest.getHost().getId());
+            guestRegistry.guestCreated(guest);
+            nodeSync.nodeAdded(guest);
+            fragmentation.guestAdded(guest);
+            SimLog.debug(() -> CloudSim.clock() + ": " + getName() + ": " + guest.getClassName() + " #" + vmId
+                    + " has been created in Datacenter #" + datacenterId + ", " + guest.getHost().getClassName() + " #"
+                    + guest.getHost().getId());
         } else {
-            Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": Creation of ", guest.getClassName(), " #", vmId,
-                    " failed in Datacenter #", datacenterId);
+            SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Creation of " + guest.getClassName() + " #" + vmId
+                    + " failed in Datacenter #" + datacenterId);
         }
 
         incrementVmsAcks();
+    }
 
-        if (getVmsRequested() == getVmsAcks()) {
-            sendAllActiveNodesToControlPlane();
-            if (getGuestsCreatedList().size() == getGuestList().size()) {
-                submitCloudlets();
-            } else {
-                boolean triedAllDatacenters = true;
-                for (int nextDatacenterId : getDatacenterIdsList()) {
-                    if (!getDatacenterRequestedIdsList().contains(nextDatacenterId)) {
-                        createVmsInDatacenter(nextDatacenterId);
-                        triedAllDatacenters = false;
-                        break;
-                    }
+    private void allGuestsAcknowledged() {
+        syncNodesWithControlPlane();
+        if (getGuestsCreatedList().size() == getGuestList().size()) {
+            submitCloudlets();
+        } else {
+            boolean triedAllDatacenters = true;
+            for (int nextDatacenterId : getDatacenterIdsList()) {
+                if (!getDatacenterRequestedIdsList().contains(nextDatacenterId)) {
+                    createVmsInDatacenter(nextDatacenterId);
+                    triedAllDatacenters = false;
+                    break;
                 }
+            }
 
-                if (triedAllDatacenters) {
-                    if (!getGuestsCreatedList().isEmpty()) {
-                        submitCloudlets();
-                    } else {
-                        Log.printlnConcat(CloudSim.clock(), ": ", getName(),
-                                ": none of the required VMs/Containers could be created. CloudSim will terminate naturally when no more events remain.");
-                        // No explicit terminateSimulation() here.
-                    }
+            if (triedAllDatacenters) {
+                if (!getGuestsCreatedList().isEmpty()) {
+                    submitCloudlets();
+                } else {
+                    SimLog.error(() -> CloudSim.clock() + ": " + getName()
+                            + ": none of the required VMs/Containers could be created. CloudSim will terminate naturally when no more events remain.");
+                    // No explicit terminateSimulation() here.
                 }
             }
         }
     }
 
-    private void sendAllActiveNodesToControlPlane() {
-        List<ObjectNode> nodeJsons = new ArrayList<>();
-        ObjectMapper mapper = new ObjectMapper();
+    /**
+     * Brings the scheduler's node set up to date. Sends only the guests created or destroyed since the
+     * last sync, unless {@link NodeSyncTracker} asks for a full reconciliation.
+     */
+    private void syncNodesWithControlPlane() {
+        long start = System.nanoTime();
+        if (nodeSync.isFullSyncDue()) {
+            nodeSync.syncCompleted(true, schedulingBackend.syncAllNodes(nodeSync.getLiveNodes()));
+        } else if (nodeSync.hasPendingChanges()) {
+            nodeSync.syncCompleted(false,
+                    schedulingBackend.syncNodeDelta(nodeSync.getPendingAdds(), nodeSync.getPendingRemovals()));
+        }
+        SchedulerMetrics.recordBlocked(System.nanoTime() - start);
+    }
 
-        for (GuestEntity guest : getGuestsCreatedList()) {
-            ObjectNode nodeJson = mapper.createObjectNode();
-            nodeJson.put("id", guest.getId());
-            nodeJson.put("mipsAvailable", (int) guest.getMips());
-            nodeJson.put("ramAvailable", guest.getRam());
-            nodeJson.put("pes", guest.getNumberOfPes());
-            nodeJson.put("bw", guest.getBw());
-            nodeJson.put("size", guest.getSize());
-            nodeJson.put("type", guest instanceof Vm ? "vm" : "container");
+    /** See {@link NodeSyncTracker#setFullSyncEvery(int)}. */
+    public void setFullNodeSyncEvery(int deltaSyncs) {
+        nodeSync.setFullSyncEvery(deltaSyncs);
+    }
 
-            String name = guest instanceof Vm ? "vm-" + guest.getId()
-                    : guest instanceof Container ? "container-" + guest.getId()
-                    : "guest-" + guest.getId();
-            nodeJson.put("name", name);
+    public SchedulingBackend getSchedulingBackend() {
+        return schedulingBackend;
+    }
 
-            nodeJsons.add(nodeJson);
-        }
+    /** Replaces the scheduler the broker delegates to. Must be called before the simulation starts. */
+    public void setSchedulingBackend(SchedulingBackend schedulingBackend) {
+        this.schedulingBackend = schedulingBackend;
+    }
 
-        if (nodeJsons.isEmpty()) return;
+    public DecisionDelay getAsyncScheduling() {
+        return asyncDecisionDelay;
+    }
 
-        try {
-            String payload = mapper.writeValueAsString(nodeJsons);
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(CONTROL_PLANE_URL + "/nodes"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(payload))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 200) {
-                Log.println(CloudSim.clock() + ": Synced active nodes: " + payload);
-            } else {
-                Log.println(CloudSim.clock() + ": Failed to sync nodes: " + response.body());
-            }
-        } catch (IOException | InterruptedException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Makes batch submissions and completion reports non-blocking. The request is sent in the background
+     * and the broker posts itself a {@link CloudActionTagsEx#SCHEDULING_DECISION} event, so the event loop
+     * keeps processing other entities' events while the scheduler works. The decisions are bound when that
+     * event is processed, {@code delay} after the request in simulated time. With a zero or fixed delay, a
+     * response that has not arrived by then is waited for, since the simulation cannot go past that time
+     * without it. With a measured delay the simulation keeps advancing up to the scaled round trip so far,
+     * so the event loop only waits when simulated time has caught up with it. Node syncs stay blocking.
+     * Pass null to turn async mode off.
+     */
+    public void setAsyncScheduling(DecisionDelay delay) {
+        this.asyncDecisionDelay = delay;
+    }
+
+    /** Returns the number of asynchronous scheduling requests whose decisions have not been bound yet. */
+    public int getDecisionsInFlight() {
+        return decisionsInFlight;
+    }
+
+    /** Share of the nodes' free PEs that no pending pod can use, see {@link FragmentationTracker}. */
+    public double getFragmentationIndex() {
+        return fragmentation.getIndex();
+    }
+
+    /** Stranded PEs and RAM per guest and host, see {@link FragmentationTracker}. */
+    public FragmentationTracker getFragmentation() {
+        return fragmentation;
     }
 
     @Override
     protected void submitCloudlets() {
-        Log.println("Submitting all cloudlets to Control Plane in a single batch...");
+        SimLog.info("Submitting all cloudlets to Control Plane in a single batch...");
 //        Log.println("Syncing all nodes again first to make sure...");
 //        sendAllActiveNodesToControlPlane();
 //        Log.printlnConcat("Done syncing nodes. Continuing to the cloudlets batch...");
 
-        // 1. Prepare payload
-        String requestBody = serializeCloudletsForSubmission(getCloudletList());
-        if (requestBody == null){
-            Log.printlnConcat(CloudSim.clock(),": Request body is null?");
-            return;
-        }
+        syncNodesWithControlPlane();
+
+        List<Cloudlet> batch = new ArrayList<>(getCloudletList());
         getCloudletList().clear();
+        for (Cloudlet cloudlet : batch) {
+            cloudletsSubmittedToMiddle.put(cloudlet.getCloudletId(), cloudlet);
+            submitTimes.put(cloudlet.getCloudletId(), CloudSim.clock());
+            fragmentation.podPending(cloudlet);
+        }
 
-        // 2. Submit to control plane
-        ArrayNode scheduledPods = submitCloudletBatchToMiddleware(requestBody);
-        if (scheduledPods == null){
-            Log.printlnConcat(CloudSim.clock(),": No pods to schedule. Skipping pod response process");
+        if (asyncDecisionDelay != null) {
+            long sentWallNanos = System.nanoTime();
+            awaitDecisions(schedulingBackend.submitBatchAsync(batch), sentWallNanos, "batch submission");
             return;
         }
 
-        // 3. Process scheduling result
-        processScheduledPodsResponse(scheduledPods);
+        // Scheduling results are bound to their VMs as they arrive, then handed to CloudSim together.
+        SimLog.info(() -> getName() + ": Processing pods response");
+        long sentWallNanos = System.nanoTime();
+        int decisions = schedulingBackend.submitBatch(batch, this::processScheduledPod);
+        recordBlockingDecisions(decisions, sentWallNanos);
+        submitScheduledBatch();
+        if (decisions < 0) {
+            SimLog.info(() -> CloudSim.clock() + ": No pods to schedule. Skipping pod response process");
+        }
     }
 
-    private String serializeCloudletsForSubmission(List<Cloudlet> cloudletList){
-        return serializeCloudletsForSubmission(cloudletList,false);
+    /** Records a blocking request sent at {@code sentWallNanos} that returned {@code decisions}, or -1 if it failed. */
+    private static void recordBlockingDecisions(int decisions, long sentWallNanos) {
+        long elapsed = System.nanoTime() - sentWallNanos;
+        SchedulerMetrics.recordBlocked(elapsed);
+        if (decisions >= 0) {
+            SchedulerMetrics.recordBatch(decisions, elapsed, 0.0);
+        }
     }
 
-    private String serializeCloudletsForSubmission(List<Cloudlet> cloudletList,boolean deletion) {
-        ObjectMapper mapper = new ObjectMapper();
-        List<ObjectNode> podJsonList = new ArrayList<>();
+    /** Submits every cloudlet bound by the last batch of decisions to CloudSim. */
+    private void submitScheduledBatch() {
+        SimLog.info("Finished scheduling batch. Submitting to CloudSim.");
+        cloudSimAllocation();
+        SimLog.info("CloudSim finished scheduling batch.");
+    }
+
+    /**
+     * Schedules the {@link CloudActionTagsEx#SCHEDULING_DECISION} event that will bind {@code decisions}.
+     * With a measured delay the event first fires straight away and keeps re-posting itself until the
+     * response is in, see {@link #processSchedulingDecision}.
+     */
+    private void awaitDecisions(CompletableFuture<List<ScheduledPod>> decisions, long sentWallNanos, String request) {
+        PendingDecision pending = new PendingDecision(decisions, asyncDecisionDelay, CloudSim.clock(), sentWallNanos, request);
+        decisionsInFlight++;
+        double delay = pending.delay.isKnownUpfront() ? pending.delay.simulatedDelay(0) : 0.0;
+        schedule(getId(), delay, CloudActionTagsEx.SCHEDULING_DECISION, pending);
+    }
 
-        for (Cloudlet cloudlet : cloudletList) {
-            ObjectNode podJson = mapper.createObjectNode();
-            podJson.put("id", cloudlet.getCloudletId());
-            podJson.put("name", "cloudlet-" + cloudlet.getCloudletId());
-            podJson.put("length", cloudlet.getCloudletLength());
-            podJson.put("pes", cloudlet.getNumberOfPes());
-            podJson.put("fileSize", cloudlet.getCloudletFileSize());
-            podJson.put("outputSize", cloudlet.getCloudletOutputSize());
-            podJson.put("utilizationCpu", cloudlet.getUtilizationModelCpu().getUtilization(0));
-            podJson.put("utilizationRam", cloudlet.getUtilizationModelRam().getUtilization(0));
-            podJson.put("utilizationBw", cloudlet.getUtilizationModelBw().getUtilization(0));
-            podJsonList.add(podJson);
-            if(!deletion) {
-                cloudletsSubmittedToMiddle.put(cloudlet.getCloudletId(), cloudlet);
+    /**
+     * Binds a pending request's decisions, or puts it off. A fixed or zero delay is due when the event fires,
+     * so the event loop waits for a response that has not arrived. A measured delay is not known until the
+     * response arrives, but it is at least the round trip so far, scaled. While the request is in flight the
+     * event is re-posted at that lower bound, so the simulation advances up to it, and the event loop waits at
+     * most {@link #RESPONSE_POLL_NANOS} per firing. Once the response is in, the event is re-posted at the
+     * final time, and the decisions are bound there.
+     * <p>
+     * The round trip is taken to end when the broker first sees the response, which is after every lower
+     * bound it used, so the final time is never behind the simulation clock.
+     */
+    private void processSchedulingDecision(SimEvent ev) {
+        PendingDecision pending = (PendingDecision) ev.getData();
+        long waitStart = System.nanoTime();
+        if (pending.delay.isKnownUpfront()) {
+            // Due now, so wait for the response whether it succeeds or fails
+            pending.response.handle((result, error) -> null).join();
+        } else if (!pending.delayApplied) {
+            boolean arrived = waitForResponse(pending.response, RESPONSE_POLL_NANOS);
+            long polledAt = System.nanoTime();
+            SchedulerMetrics.recordBlocked(polledAt - waitStart);
+            double wallSeconds = (polledAt - pending.sentWallNanos) / 1e9;
+            if (arrived) {
+                pending.delayApplied = true;
+                wallSeconds = schedulingBackend.roundTripSeconds(pending.response, wallSeconds);
             }
+            double remaining = pending.sentAt + pending.delay.simulatedDelay(wallSeconds) - CloudSim.clock();
+            if (!arrived || remaining > 0) {
+                schedule(getId(), Math.max(remaining, 0.0), CloudActionTagsEx.SCHEDULING_DECISION, pending);
+                return;
+            }
+            waitStart = System.nanoTime();
         }
 
+        schedulingBackend.decisionsTaken(pending.response);
+        List<ScheduledPod> decisions;
         try {
-            return mapper.writeValueAsString(podJsonList);
-        } catch (Exception e) {
-            Log.printlnConcat(getName(), ": Error serializing cloudlets: ", e.getMessage());
-            return null;
+            decisions = pending.response.join();
+        } catch (CompletionException e) {
+            decisions = null;
+            SimLog.error(() -> CloudSim.clock() + ": " + getName() + ": Asynchronous " + pending.request + " failed: "
+                    + (e.getCause() != null ? e.getCause().getMessage() : e.getMessage()));
         }
+        SchedulerMetrics.recordBlocked(System.nanoTime() - waitStart);
+
+        decisionsInFlight--;
+        if (decisions == null) return;
+        int decisionCount = decisions.size();
+        SchedulerMetrics.recordBatch(decisionCount, System.nanoTime() - pending.sentWallNanos, CloudSim.clock() - pending.sentAt);
+        SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Binding " + decisionCount + " decision(s) from the "
+                + pending.request + " sent at " + pending.sentAt);
+        for (ScheduledPod pod : decisions) {
+            processScheduledPod(pod);
+        }
+        submitScheduledBatch();
     }
 
-    private String serializeSingleCloudletForSubmission(Cloudlet cloudlet){
-        return serializeSingleCloudletForSubmission(cloudlet,false);
-    }
-    private String serializeSingleCloudletForSubmission(Cloudlet cloudlet,boolean deletion) {
-        return serializeCloudletsForSubmission(List.of(cloudlet),deletion);
-    }
-
-    private ArrayNode submitCloudletBatchToMiddleware(String requestBody) {
+    /**
+     * Waits up to {@code timeoutNanos} for {@code future} to be done, and returns whether it is. A failed
+     * future counts as done; its failure is reported when the decisions are bound.
+     */
+    private static boolean waitForResponse(CompletableFuture<?> future, long timeoutNanos) {
         try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(CONTROL_PLANE_URL + "/schedule-pods"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            System.out.println("Requesting: " + CONTROL_PLANE_URL + "/schedule-pods");
-
-            if (response.statusCode() == 200) {
-                ObjectMapper mapper = new ObjectMapper();
-                return (ArrayNode) mapper.readTree(response.body());
-            } else {
-                Log.printlnConcat(getName(), ": Failed to batch schedule cloudlets. HTTP ", response.statusCode());
-                return null;
-            }
-        } catch (Exception e) {
-            Log.printlnConcat(getName(), ": Error submitting cloudlets batch: ", e.getMessage());
-            return null;
+            future.get(timeoutNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException | CancellationException e) {
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return future.isDone();
         }
+        return true;
     }
 
-    private void processScheduledPodsResponse(ArrayNode scheduledPods) {
-        Log.printlnConcat(getName(), ": Processing pods response");
-        Log.printlnConcat(getName(), ": the array looks like so: ", scheduledPods);
-        for (JsonNode podNode : scheduledPods) {
-            Log.printlnConcat(getName(), ": Entering scheduledPods");
-            int cloudletId = podNode.get("id").asInt();
-            String status = podNode.get("status").asText();
-            int nodeID = podNode.has("vmId") ? podNode.get("vmId").asInt() : -1;
+    private static final class PendingDecision {
+        // The future the backend returned
+        final CompletableFuture<List<ScheduledPod>> response;
+        final DecisionDelay delay;
+        final double sentAt;
+        final long sentWallNanos;
+        final String request;
+        boolean delayApplied = false;
+
+        PendingDecision(CompletableFuture<List<ScheduledPod>> response, DecisionDelay delay, double sentAt,
+                        long sentWallNanos, String request) {
+            this.response = response;
+            this.delay = delay;
+            this.sentAt = sentAt;
+            this.sentWallNanos = sentWallNanos;
+            this.request = request;
+        }
+    }
 
+    private void processScheduledPod(ScheduledPod pod) {
+        int cloudletId = pod.id();
+        String status = pod.status();
+        int nodeID = pod.vmId();
 
-            Cloudlet cloudlet = cloudletsSubmittedToMiddle.getOrDefault(cloudletId, null);
-            if (cloudlet == null){
-                Log.printlnConcat(getName(), ": Pod ",cloudletId, " not found in Pending Cloudlets for scheduling. It was supposed to be in Pod/VM ",nodeID);
-                continue;
-            }
+        Cloudlet cloudlet = cloudletsSubmittedToMiddle.getOrDefault(cloudletId, null);
+        if (cloudlet == null){
+            SimLog.info(() -> getName() + ": Pod " + cloudletId + " not found in Pending Cloudlets for scheduling. It was supposed to be in Pod/VM " + nodeID);
+            return;
+        }
 
-            Log.printlnConcat(CloudSim.clock() + ": For Cloudlet #" + cloudletId + " the status is " + status);
-            switch (status) {
-                case "Scheduled" -> {
-                    Log.printlnConcat(CloudSim.clock() + ": For Cloudlet #" + cloudletId + " scheduled at node " + nodeID);
-                    String nodeName = podNode.has("nodeName") ? podNode.get("nodeName").asText() : "N/A";
-                    Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": Pod ", cloudletId,
-                            " scheduled on Node ", nodeName, " (VM ID ", nodeID, ")");
-                    if (nodeID != -1) {
-                        submitCloudletToVmInCloudSim(cloudlet, nodeID);
-                        cloudletsSubmittedToMiddle.remove(cloudletId);
-                        cloudletsReadyForCloudsim.put(cloudletId, cloudlet);
-                    } else {
-                        cloudlet.setCloudletStatus(Cloudlet.CloudletStatus.FAILED);
-                        getCloudletReceivedList().add(cloudlet);
-                    }
+        // Up to five lines per pod, so build them only when they will be written
+        boolean logPod = SimLog.isDebugEnabled();
+        if (logPod) {
+            SimLog.debug(CloudSim.clock() + ": For Cloudlet #" + cloudletId + " the status is " + status);
+        }
+        switch (status) {
+            case "Scheduled" -> {
+                if (logPod) {
+                    SimLog.debug(CloudSim.clock() + ": For Cloudlet #" + cloudletId + " scheduled at node " + nodeID);
+                    String nodeName = pod.nodeName() != null ? pod.nodeName() : "N/A";
+                    SimLog.debug(CloudSim.clock() + ": " + getName() + ": Pod " + cloudletId
+                            + " scheduled on Node " + nodeName + " (VM ID " + nodeID + ")");
                 }
-                case "Unschedulable", "Unknown" -> {
-                    Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": Pod ", cloudletId, " is unschedulable or unknown.");
+                if (nodeID != -1) {
+                    submitCloudletToVmInCloudSim(cloudlet, nodeID);
+                    cloudletsSubmittedToMiddle.remove(cloudletId);
+                    cloudletsReadyForCloudsim.put(cloudletId, cloudlet);
+                    readyCloudletIds.set(cloudletId);
+                } else {
                     cloudlet.setCloudletStatus(Cloudlet.CloudletStatus.FAILED);
-                    //getCloudletReceivedList().add(cloudlet);
+                    getCloudletReceivedList().add(cloudlet);
+                    submitTimes.remove(cloudletId, Double.NaN);
+                    fragmentation.podDropped(cloudlet);
                 }
             }
-            Log.printlnConcat(getName(), ": Done processing pod response");
+            case "Unschedulable", "Unknown" -> {
+                if (logPod) {
+                    SimLog.debug(CloudSim.clock() + ": " + getName() + ": Pod " + cloudletId + " is unschedulable or unknown.");
+                }
+                cloudlet.setCloudletStatus(Cloudlet.CloudletStatus.FAILED);
+                //getCloudletReceivedList().add(cloudlet);
+            }
+            case null, default -> {
+            }
+        }
+        if (logPod) {
+            SimLog.debug(getName() + ": Done processing pod response");
         }
-
-        Log.println("Finished scheduling batch. Submitting to CloudSim.");
-        Log.println("CloudSim finished scheduling batch.");
-        cloudSimAllocation();
     }
 
     protected void cloudSimAllocation() {
-        List<Cloudlet> successfullySubmitted = new ArrayList<>();
-        for (Integer key : cloudletsReadyForCloudsim.keySet()) {
-            Cloudlet cloudlet = cloudletsReadyForCloudsim.get(key);
-            GuestEntity vm;
-            // if user didn't bind this cloudlet and it has not been executed yet
-            if (cloudlet.getGuestId() == -1) {
-                Log.printlnConcat("ERROR: We SOMEHOW got a guestID of -1");
-                vm = getGuestsCreatedList().get(guestIndex);
-            } else { // submit to the specific vm
-                vm = VmList.getById(getGuestsCreatedList(), cloudlet.getGuestId());
-                if (vm == null) { // vm was not created
-                    vm = VmList.getById(getGuestList(), cloudlet.getGuestId()); // check if exists in the submitted list
-
-                    if(!Log.isDisabled()) {
-                        if (vm != null) {
-                            Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": Postponing execution of cloudlet ",
-                                    cloudlet.getCloudletId(), ": bount ", vm.getClassName(), " #", vm.getId(), " not available");
-                        } else {
-                            Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": Postponing execution of cloudlet ",
-                                    cloudlet.getCloudletId(), ": bount guest entity of id ", cloudlet.getGuestId(), " doesn't exist");
-                        }
+        // In cloudlet id order, the order the HashMap<Integer, Cloudlet> this map replaced gave small ids,
+        // so same-time submissions and the received list do not depend on the hash layout
+        for (int cloudletId = readyCloudletIds.nextSetBit(0); cloudletId >= 0;
+             cloudletId = readyCloudletIds.nextSetBit(cloudletId + 1)) {
+            if (submitReadyCloudlet(cloudletId, cloudletsReadyForCloudsim.get(cloudletId))) {
+                cloudletsReadyForCloudsim.remove(cloudletId);
+                readyCloudletIds.clear(cloudletId);
+            }
+        }
+    }
+
+    /** Sends a bound cloudlet to its VM's datacenter. Returns false if it has to keep waiting. */
+    private boolean submitReadyCloudlet(int cloudletId, Cloudlet cloudlet) {
+        GuestEntity vm;
+        // if user didn't bind this cloudlet and it has not been executed yet
+        if (cloudlet.getGuestId() == -1) {
+            SimLog.error("ERROR: We SOMEHOW got a guestID of -1");
+            vm = getGuestsCreatedList().get(guestIndex);
+        } else { // submit to the specific vm
+            vm = guestRegistry.getCreated(cloudlet.getGuestId());
+            if (vm == null) { // vm was not created
+                vm = guestRegistry.getSubmitted(cloudlet.getGuestId(), getGuestList()); // check if exists in the submitted list
+
+                if (SimLog.isDebugEnabled()) {
+                    if (vm != null) {
+                        SimLog.debug(CloudSim.clock() + ": " + getName() + ": Postponing execution of cloudlet "
+                                + cloudlet.getCloudletId() + ": bount " + vm.getClassName() + " #" + vm.getId() + " not available");
+                    } else {
+                        SimLog.debug(CloudSim.clock() + ": " + getName() + ": Postponing execution of cloudlet "
+                                + cloudlet.getCloudletId() + ": bount guest entity of id " + cloudlet.getGuestId() + " doesn't exist");
                     }
-                    Log.printlnConcat("We're continuing here, for some reason");
-                    continue;
+                    SimLog.debug("We're continuing here, for some reason");
                 }
+                return false;
             }
+        }
 
-            if (!Log.isDisabled()) {
-                Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": Sending ", cloudlet.getClass().getSimpleName(),
-                        " #", cloudlet.getCloudletId(), " to " + vm.getClassName() + " #", vm.getId());
-            }
+        if (SimLog.isDebugEnabled()) {
+            SimLog.debug(CloudSim.clock() + ": " + getName() + ": Sending " + cloudlet.getClass().getSimpleName()
+                    + " #" + cloudlet.getCloudletId() + " to " + vm.getClassName() + " #" + vm.getId());
+        }
 
-            cloudlet.setGuestId(vm.getId());
-            sendNow(getVmsToDatacentersMap().get(vm.getId()), CloudActionTags.CLOUDLET_SUBMIT, cloudlet);
-            cloudletsSubmitted++;
-            guestIndex = (guestIndex + 1) % getGuestsCreatedList().size();
-            getCloudletSubmittedList().add(cloudlet);
-            successfullySubmitted.add(cloudlet);
+        cloudlet.setGuestId(vm.getId());
+        sendNow(getVmsToDatacentersMap().get(vm.getId()), CloudActionTags.CLOUDLET_SUBMIT, cloudlet);
+        cloudletsSubmitted++;
+        guestIndex = (guestIndex + 1) % getGuestsCreatedList().size();
+        getCloudletSubmittedList().add(cloudlet);
+        return true;
+    }
+
+    @Override
+    public void startEntity() {
+        if (SchedulerMetrics.runStarted(CloudSim.clock())) {
+            // First broker of this simulation: drop what earlier runs or forks in this JVM recorded
+            CloudletMetrics.reset();
+            FragmentationMetrics.reset();
+            ControlPlaneMetrics.reset();
+        }
+        super.startEntity();
+    }
+
+    @Override
+    public void shutdownEntity() {
+        super.shutdownEntity();
+        SchedulerMetrics.runFinished(CloudSim.clock());
+    }
+
+    @Override
+    public void processEvent(SimEvent ev) {
+        if (ev.getTag() == CloudActionTagsEx.FLUSH_COMPLETED_CLOUDLETS) {
+            flushCompletedCloudlets();
+            return;
+        }
+        if (ev.getTag() == CloudActionTagsEx.SCHEDULING_DECISION) {
+            processSchedulingDecision(ev);
+            return;
+        }
+        if (ev.getTag() == CloudActionTagsEx.VM_CREATE_BATCH_ACK) {
+            processVmCreateBatchAck(ev);
+            return;
+        }
+        if (ev.getTag() == CloudActionTagsEx.CHECKPOINT_RESTORE) {
+            restoreCheckpoint(ev);
+            return;
+        }
+        if (ev.getTag() == CloudActionTags.VM_DESTROY_ACK) {
+            processVmDestroyAck(ev);
         }
+        super.processEvent(ev);
+    }
 
-        // remove submitted cloudlets from waiting list
-        for(Cloudlet cloudlet : successfullySubmitted) {
-            cloudletsReadyForCloudsim.remove(cloudlet.getCloudletId());
+    /**
+     * Records a destroyed guest so it is no longer a placement target and its node is removed from the
+     * control plane on the next sync.
+     */
+    private void processVmDestroyAck(SimEvent ev) {
+        int[] data = (int[]) ev.getData();
+        int vmId = data[1];
+        if (data[2] == CloudSimTags.TRUE) {
+            guestRegistry.guestDestroyed(vmId);
+            nodeSync.nodeRemoved(vmId);
+            fragmentation.guestRemoved(vmId);
         }
     }
 
+    /**
+     * Records the returned cloudlet's wait and execution time in {@link CloudletMetrics}, then queues it
+     * instead of reporting it straight away. Every return that arrives at the same simulated time, or within
+     * {@link #getCompletionBatchWindow()} of the first one, is reported to the control plane in a single
+     * request by {@link #flushCompletedCloudlets()}.
+     */
     @Override
     protected void processCloudletReturn(SimEvent ev) {
 //        sendAllActiveNodesToControlPlane();
         Cloudlet cloudlet = (Cloudlet) ev.getData();
-        Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": ", cloudlet.getClass().getSimpleName()," #", cloudlet.getCloudletId(), " return received");
+        SimLog.debug(() -> CloudSim.clock() + ": " + getName() + ": " + cloudlet.getClass().getSimpleName() + " #" + cloudlet.getCloudletId() + " return received");
 
-        updateMiddleware(cloudlet);
+        fragmentation.podFinished(cloudlet.getCloudletId());
+        double submitTime = submitTimes.remove(cloudlet.getCloudletId(), Double.NaN);
+        if (!Double.isNaN(submitTime) && cloudlet.getStatus() == Cloudlet.CloudletStatus.SUCCESS) {
+            CloudletMetrics.record(cloudlet.getExecStartTime() - submitTime, cloudlet.getActualCPUTime());
+        }
 
-        if (getLifeLength() <= 0 && cloudletsSubmittedToMiddle.isEmpty() && cloudletsReadyForCloudsim.isEmpty()) {
-            // Will kill the broker if there are no more cloudlets.
-            super.processCloudletReturn(ev);
-        } else {
-            getCloudletReceivedList().add(cloudlet);
-            cloudletsSubmitted--;
+        pendingCompletions.add(ev);
+        if (pendingCompletions.size() == 1) {
+            schedule(getId(), completionBatchWindow, CloudActionTagsEx.FLUSH_COMPLETED_CLOUDLETS);
         }
+    }
+
+    private void flushCompletedCloudlets() {
+        List<SimEvent> completions = new ArrayList<>(pendingCompletions);
+        pendingCompletions.clear();
+        if (completions.isEmpty()) return;
 
+        List<Cloudlet> finished = new ArrayList<>(completions.size());
+        for (SimEvent ev : completions) {
+            finished.add((Cloudlet) ev.getData());
+        }
+        updateMiddleware(finished);
 
+        for (SimEvent ev : completions) {
+            if (getLifeLength() <= 0 && cloudletsSubmittedToMiddle.isEmpty() && cloudletsReadyForCloudsim.isEmpty()) {
+                // Will kill the broker if there are no more cloudlets.
+                super.processCloudletReturn(ev);
+            } else {
+                getCloudletReceivedList().add((Cloudlet) ev.getData());
+                cloudletsSubmitted--;
+            }
+        }
     }
 
-    private void updateMiddleware(Cloudlet cloudlet) {
-        Log.printlnConcat("Deleting cloudlet ", cloudlet.getCloudletId(), " from the control panel.");
+    private void updateMiddleware(List<Cloudlet> cloudlets) {
+        SimLog.info(() -> "Deleting " + cloudlets.size() + " cloudlet(s) from the control panel.");
+
+
+        syncNodesWithControlPlane();
 
+        if (asyncDecisionDelay != null) {
+            long sentWallNanos = System.nanoTime();
+            awaitDecisions(schedulingBackend.completeAndRescheduleAsync(cloudlets), sentWallNanos, "completion report");
+            return;
+        }
 
-        String jsonPayload = serializeSingleCloudletForSubmission(cloudlet,true);
-        ArrayNode newCloudlets = deleteCloudletAndWait(jsonPayload);
+        long sentWallNanos = System.nanoTime();
+        int newCloudlets = schedulingBackend.completeAndReschedule(cloudlets, this::processScheduledPod);
+        recordBlockingDecisions(newCloudlets, sentWallNanos);
+        submitScheduledBatch();
 
-        if (newCloudlets == null || newCloudlets.isEmpty()) {
-            Log.println("No new cloudlets to submit.");
+        if (newCloudlets <= 0) {
+            SimLog.info("No new cloudlets to submit.");
         }
         else {
-            Cloudlet newcloudlet = cloudletsSubmittedToMiddle.get(newCloudlets.get(0).get("id").asInt());
-            Log.printlnConcat("New cloudlet to submit: ", newcloudlet.getCloudletId(), ". Proceeding...");
-            processScheduledPodsResponse(newCloudlets);
+            SimLog.info(() -> newCloudlets + " new cloudlet(s) submitted.");
         }
 
     }
-    public ArrayNode deleteCloudletAndWait(String jsonPayload) {
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(URI.create(CONTROL_PLANE_URL + "/pods/update-state"))
-                    .header("Content-Type", "application/json")
-                    .POST(HttpRequest.BodyPublishers.ofString(jsonPayload))
-                    .build();
-
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-
-            if (response.statusCode() == 200) {
-                Log.println("Cloudlet deletion and wait successful. Response: " + response.body());
 
-                ObjectMapper mapper = new ObjectMapper();
-                JsonNode rootNode = mapper.readTree(response.body());
+    /**
+     * Returns the simulated time, after the first of a group of cloudlet returns, during which further
+     * returns are batched into the same /pods/update-state request. 0 batches only same-timestamp returns.
+     */
+    public double getCompletionBatchWindow() {
+        return completionBatchWindow;
+    }
 
-                if (rootNode.isArray()) {
-                    return (ArrayNode) rootNode;
-                } else {
-                    Log.println("Expected an array in response, got: " + rootNode);
-                    return null;
-                }
-            } else {
-                Log.println("Failed to delete cloudlet. Status: " + response.statusCode() + " Body: " + response.body());
-                return null;
-            }
-        } catch (IOException | InterruptedException e) {
-            Log.println("Error during cloudlet deletion request: " + e.getMessage());
-            Thread.currentThread().interrupt();
-            return null;
+    public void setCompletionBatchWindow(double completionBatchWindow) {
+        if (completionBatchWindow < 0) {
+            throw new IllegalArgumentException("Completion batch window must not be negative");
         }
+        this.completionBatchWindow = completionBatchWindow;
     }
 
-
-
-
     private void submitCloudletToVmInCloudSim(Cloudlet cloudlet, int vmId) {
-        GuestEntity targetVm = VmList.getById(getGuestsCreatedList(), vmId);
+        GuestEntity targetVm = guestRegistry.getCreated(vmId);
 
         if (targetVm == null) {
-            Log.printlnConcat(CloudSim.clock(), ": ", getName(), ": CRITICAL ERROR: Target VM/Container #", vmId, " not found for Cloudlet #", cloudlet.getCloudletId(), " in CloudSim's list. Marking as failed.");
+            SimLog.error(() -> CloudSim.clock() + ": " + getName() + ": CRITICAL ERROR: Target VM/Container #" + vmId + " not found for Cloudlet #" + cloudlet.getCloudletId() + " in CloudSim's list. Marking as failed.");
             cloudlet.setCloudletStatus(Cloudlet.CloudletStatus.FAILED);
             getCloudletReceivedList().add(cloudlet);
+            submitTimes.remove(cloudlet.getCloudletId(), Double.NaN);
+            fragmentation.podDropped(cloudlet);
             return;
         }
 
         cloudlet.setGuestId(targetVm.getId());
+        fragmentation.podPlaced(cloudlet, targetVm.getId());
     }
 
 
-    public void sendResetRequestToControlPlane() {
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create(CONTROL_PLANE_URL + "/reset"))
-                .DELETE()
-                .build();
+    /** A checkpoint can only be taken while no scheduling decisions or cloudlet returns are held back. */
+    boolean canCheckpoint() {
+        return decisionsInFlight == 0 && pendingCompletions.isEmpty();
+    }
 
-        try {
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            if (response.statusCode() == 200) {
-                Log.println("Sent reset request to Control Plane.");
-            } else {
-                Log.println("Failed to reset Control Plane. Status: " + response.statusCode()
-                        + ", Body: " + response.body());
+    void captureCheckpoint(SimulationCheckpoint checkpoint) {
+        List<Integer> pending = new ArrayList<>();
+        for (Cloudlet cloudlet : getCloudletList()) {
+            pending.add(cloudlet.getCloudletId());
+        }
+        // Map entries in id order, so a restore resubmits them in an order that does not depend on the hash layout
+        for (IntObjectHashMap<Cloudlet> map : List.of(cloudletsSubmittedToMiddle, cloudletsReadyForCloudsim)) {
+            int[] ids = map.keys();
+            Arrays.sort(ids);
+            for (int cloudletId : ids) {
+                pending.add(cloudletId);
+            }
+        }
+        checkpoint.pendingCloudletIds = pending.stream().mapToInt(Integer::intValue).toArray();
+
+        List<Cloudlet> received = getCloudletReceivedList();
+        checkpoint.receivedCloudletIds = new int[received.size()];
+        checkpoint.receivedStatuses = new byte[received.size()];
+        for (int i = 0; i < received.size(); i++) {
+            checkpoint.receivedCloudletIds[i] = received.get(i).getCloudletId();
+            checkpoint.receivedStatuses[i] = (byte) received.get(i).getStatus().ordinal();
+        }
+        checkpoint.submittedInFlight = cloudletsSubmitted - checkpoint.runningCloudletIds.length;
+        checkpoint.brokerMetrics = SimulationCheckpoint.toBytes(out -> {
+            CloudletMetrics.writeTo(out);
+            FragmentationMetrics.broker(getName()).writeTo(out);
+        });
+    }
+
+    /** See {@link SimulationCheckpoint#restore}. Must be called before the simulation starts. */
+    void restoreFrom(SimulationCheckpoint checkpoint) {
+        this.restoring = checkpoint;
+    }
+
+    /**
+     * Takes over the guests the datacenter has put back, then resets the scheduler and submits every
+     * unfinished cloudlet to it again, running ones with the length they had left. Paused cloudlets were put
+     * back on their VM by the datacenter and are only recorded as placed.
+     */
+    private void restoreCheckpoint(SimEvent ev) {
+        SimulationCheckpoint checkpoint = restoring;
+        restoring = null;
+        int datacenterId = ev.getSource();
+        // Before the guests and cloudlets below are put back, so their fragmentation records follow on
+        SimulationCheckpoint.restoreMetrics(checkpoint.brokerMetrics, in -> {
+            CloudletMetrics.readFrom(in);
+            FragmentationMetrics.broker(getName()).readFrom(in);
+        });
+
+        for (GuestEntity guest : getGuestList()) {
+            if (guest.getHost() == null) continue;
+            getVmsToDatacentersMap().put(guest.getId(), datacenterId);
+            getGuestsCreatedList().add(guest);
+            guestRegistry.guestCreated(guest);
+            nodeSync.nodeAdded(guest);
+            fragmentation.guestAdded(guest);
+        }
+        getDatacenterRequestedIdsList().add(datacenterId);
+        setVmsRequested(getGuestsCreatedList().size());
+        setVmsAcks(getGuestsCreatedList().size());
+
+        IntObjectHashMap<Cloudlet> cloudlets = new IntObjectHashMap<>(getCloudletList().size());
+        for (Cloudlet cloudlet : getCloudletList()) {
+            cloudlets.put(cloudlet.getCloudletId(), cloudlet);
+        }
+        getCloudletList().clear();
+
+        Cloudlet.CloudletStatus[] statuses = Cloudlet.CloudletStatus.values();
+        for (int i = 0; i < checkpoint.receivedCloudletIds.length; i++) {
+            Cloudlet cloudlet = cloudlets.get(checkpoint.receivedCloudletIds[i]);
+            if (cloudlet == null) continue;
+            cloudlet.setCloudletStatus(statuses[checkpoint.receivedStatuses[i]]);
+            getCloudletReceivedList().add(cloudlet);
+        }
+        cloudletsSubmitted = checkpoint.submittedInFlight;
+
+        List<Cloudlet> unfinished = getCloudletList();
+        for (int cloudletId : checkpoint.pendingCloudletIds) {
+            Cloudlet cloudlet = cloudlets.get(cloudletId);
+            if (cloudlet != null) {
+                unfinished.add(cloudlet);
+            }
+        }
+        for (int i = 0; i < checkpoint.runningCloudletIds.length; i++) {
+            Cloudlet cloudlet = cloudlets.get(checkpoint.runningCloudletIds[i]);
+            if (cloudlet != null) {
+                cloudlet.setCloudletLength(Math.max(checkpoint.remainingLengths[i], 1));
+                unfinished.add(cloudlet);
+            }
+        }
+        for (int i = 0; i < checkpoint.pausedCloudletIds.length; i++) {
+            Cloudlet cloudlet = cloudlets.get(checkpoint.pausedCloudletIds[i]);
+            if (cloudlet == null) continue;
+            getCloudletSubmittedList().add(cloudlet);
+            submitTimes.put(cloudlet.getCloudletId(), CloudSim.clock());
+            fragmentation.podPending(cloudlet);
+            fragmentation.podPlaced(cloudlet, checkpoint.pausedGuestIds[i]);
+        }
+
+        SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Restored " + getGuestsCreatedList().size()
+                + " guest(s) and " + unfinished.size() + " unfinished cloudlet(s) from checkpoint");
+        schedulingBackend.reset();
+        submitCloudlets();
+    }
+
+    /**
+     * Resets the control plane once the simulation has ended, then closes the scheduling backend, which
+     * flushes and closes a scheduling log being recorded or replayed. The reset is the log's last record.
+     */
+    public void sendResetRequestToControlPlane() {
+        schedulingBackend.reset();
+        if (schedulingBackend instanceof Closeable closeable) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                SimLog.error(() -> getName() + ": Error closing the scheduling backend: " + e.getMessage());
             }
-        } catch (IOException | InterruptedException e) {
-            Log.println("Error sending reset request to Control Plane: " + e.getMessage());
-            Thread.currentThread().interrupt();
         }
     }
 }
@@ -0,0 +1,91 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Tracks which guests (Kubernetes nodes) the broker has created or destroyed since the last sync, so the
+ * control plane can be sent only the changes. A full resync of every live node is requested on the first
+ * sync, after a failed sync, and every {@link #getFullSyncEvery()} delta syncs as a safety net.
+ */
+public class NodeSyncTracker {
+
+    private final Map<Integer, GuestEntity> liveNodes = new LinkedHashMap<>();
+    private final Map<Integer, GuestEntity> pendingAdds = new LinkedHashMap<>();
+    private final Set<Integer> pendingRemovals = new LinkedHashSet<>();
+
+    private int fullSyncEvery;
+    private int deltaSyncsSinceFull = 0;
+    private boolean fullSyncRequired = true;
+
+    public NodeSyncTracker(int fullSyncEvery) {
+        setFullSyncEvery(fullSyncEvery);
+    }
+
+    public void nodeAdded(GuestEntity guest) {
+        liveNodes.put(guest.getId(), guest);
+        pendingRemovals.remove(guest.getId());
+        pendingAdds.put(guest.getId(), guest);
+    }
+
+    public void nodeRemoved(int guestId) {
+        liveNodes.remove(guestId);
+        // A node that was never synced does not need to be removed from the cluster
+        if (pendingAdds.remove(guestId) == null) {
+            pendingRemovals.add(guestId);
+        }
+    }
+
+    public boolean hasPendingChanges() {
+        return !pendingAdds.isEmpty() || !pendingRemovals.isEmpty();
+    }
+
+    public boolean isFullSyncDue() {
+        return fullSyncRequired || (fullSyncEvery > 0 && deltaSyncsSinceFull >= fullSyncEvery);
+    }
+
+    public Collection<GuestEntity> getLiveNodes() {
+        return liveNodes.values();
+    }
+
+    public Collection<GuestEntity> getPendingAdds() {
+        return pendingAdds.values();
+    }
+
+    public Collection<Integer> getPendingRemovals() {
+        return pendingRemovals;
+    }
+
+    /** Records the outcome of a sync. A failed sync forces the next one to be a full resync. */
+    public void syncCompleted(boolean full, boolean success) {
+        if (!success) {
+            fullSyncRequired = true;
+            return;
+        }
+        pendingAdds.clear();
+        pendingRemovals.clear();
+        if (full) {
+            fullSyncRequired = false;
+            deltaSyncsSinceFull = 0;
+        } else {
+            deltaSyncsSinceFull++;
+        }
+    }
+
+    public int getFullSyncEvery() {
+        return fullSyncEvery;
+    }
+
+    /** Sets how many delta syncs may happen between two full resyncs. 0 disables periodic full resyncs. */
+    public void setFullSyncEvery(int fullSyncEvery) {
+        if (fullSyncEvery < 0) {
+            throw new IllegalArgumentException("Full sync interval must not be negative");
+        }
+        this.fullSyncEvery = fullSyncEvery;
+    }
+}
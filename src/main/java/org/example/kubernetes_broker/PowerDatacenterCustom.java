@@ -5,12 +5,21 @@ import org.cloudbus.cloudsim.core.*;
 import org.cloudbus.cloudsim.core.predicates.PredicateType;
 import org.cloudbus.cloudsim.power.PowerDatacenter;
 import org.cloudbus.cloudsim.power.PowerHost;
-import org.example.metrics.TimeWeightedMetric;
+import org.example.metrics.EnergyAccountant;
+import org.example.metrics.MetricRegistry;
+import org.example.metrics.TimeWeightedDistribution;
 
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 
 public class PowerDatacenterCustom extends PowerDatacenter {
     /**
@@ -27,8 +36,66 @@ public class PowerDatacenterCustom extends PowerDatacenter {
     double totalUsedMips = 0;
     double totalCapacity = 0;
     Set<Integer> totalVmIdsEverAllocated;
-    private final TimeWeightedMetric consolidationTW = new TimeWeightedMetric();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final int consolidationGauge = metrics.gauge("consolidation");
+    private final int activeVmsGauge = metrics.gauge("active_vms");
+    private final int activeCloudletsGauge = metrics.gauge("active_cloudlets");
+    private final int cloudletsReturnedCounter = metrics.counter("cloudlets_returned");
+    private final int vmsDestroyedCounter = metrics.counter("vms_destroyed");
+    private final int planningTimeDistribution = metrics.distribution("migration_planning_seconds");
+    // Consolidation again, with how long each ratio was held
+    private final TimeWeightedDistribution consolidationDistribution = new TimeWeightedDistribution();
+    // Utilisation gauge of each host, indexed by host id (-1 for none), null unless per-host metrics are on
+    private int[] hostUtilizationGauges = null;
+    private final ActiveCloudletTracker activeWorkload = new ActiveCloudletTracker();
+    // Cloudlet being handled by processCloudletSubmit, and whether it already finished inside that call
+    private Cloudlet submittingCloudlet = null;
+    private boolean submittingCloudletFinished = false;
+    // VMs whose last cloudlet has finished (or that never had one), waiting to be reaped
+    private final Set<Vm> idleVms = new LinkedHashSet<>();
     boolean disableDeallocation;
+    // Allocation policy hosts by id, built on first use; the host list does not change after construction
+    private IntObjectHashMap<HostEntity> hostsById = null;
+    // Pool for updating hosts concurrently; null keeps the sequential update
+    private ForkJoinPool hostUpdatePool = null;
+    private double[] hostNextEventTimes = new double[0];
+    private double[] hostTimeFrameEnergies = new double[0];
+    private boolean[] hostsBecameSteady = new boolean[0];
+    // Hosts with no workload whose utilisation did not change in their last update; they are not updated
+    // again until markHostDirty is called for them
+    private final Set<HostEntity> steadyHosts = new HashSet<>();
+    // Ids of the hosts that are not steady, built on first use, and the summed power of the steady ones (W)
+    private BitSet dirtyHostIds = null;
+    private double steadyHostsPower = 0.0;
+    // Power each steady host added to steadyHostsPower, by host id, so leaving takes off exactly that
+    private double[] steadyPowerByHostId = new double[0];
+    private final List<PowerHost> dirtyHosts = new ArrayList<>();
+    private boolean idleHostSkipping = false;
+    private boolean adaptiveSchedulingInterval = false;
+    // Set once a cloudlet whose utilisation may vary over time is submitted
+    private boolean timeVaryingUtilization = false;
+    // Incremental migration planning, see setIncrementalMigrationPlanning
+    private boolean incrementalMigrationPlanning = false;
+    private double planningLowerThreshold = 0;
+    private double planningUpperThreshold = 1;
+    private int maxMigrationsPerInterval = 0;
+    private long planningBudgetNanos = 0;
+    private long planningCreditNanos = 0;
+    // Planning band (UNDER, NORMAL or OVER) each host was last updated in, indexed by host id
+    private byte[] hostPlanningBands = new byte[0];
+    // Hosts whose band changed since the last complete planning pass, by host id
+    private final BitSet crossedHostIds = new BitSet();
+    private int skippedPlanningPasses = 0;
+    private final List<Double> executionTimeHistoryPlanning = new ArrayList<>();
+    // Checkpoints requested before the simulation started, scheduled by startEntity
+    private final List<CheckpointRequest> checkpointRequests = new ArrayList<>();
+    // Checkpoints due, waiting for the next update to bring the energy and cloudlet progress up to date
+    private final List<CheckpointRequest> checkpointsAwaitingUpdate = new ArrayList<>();
+    // Checkpoint to restore once the clock reaches its time, and the broker it is restored with
+    private SimulationCheckpoint restoring = null;
+    private Live_Kubernetes_Broker_Ex restoringBroker = null;
+    // Null unless exact energy accounting is on
+    private EnergyAccountant energyAccountant = null;
 
 
 
@@ -46,7 +113,8 @@ public class PowerDatacenterCustom extends PowerDatacenter {
 
     @Override
     protected void updateCloudletProcessing() {
-        if (getCloudletSubmitted() == -1 || getCloudletSubmitted() == CloudSim.clock()) {
+        // In adaptive mode a submission has already brought everything up to date, see closeUpdateWindow
+        if (!useAdaptiveInterval() && (getCloudletSubmitted() == -1 || getCloudletSubmitted() == CloudSim.clock())) {
             CloudSim.cancelAll(getId(), new PredicateType(CloudActionTags.VM_DATACENTER_EVENT));
             schedule(getId(), getSchedulingInterval(), CloudActionTags.VM_DATACENTER_EVENT);
             return;
@@ -55,45 +123,16 @@ public class PowerDatacenterCustom extends PowerDatacenter {
 
         //Bin efficiency prototype. Only addition to updateCloudletProcessing thus far!
         //...could probably make this into it's own function and then just call "super.updateCloudletProcessing".
-        int activeVMs = 0;
-        int activeCloudlets = 0;
-        for (HostEntity host : getVmAllocationPolicy().getHostList()) {
-            for(GuestEntity vm : host.getGuestList()){
-                int cloudletCount = vm.getCloudletScheduler().getCloudletExecList().size() + vm.getCloudletScheduler().getCloudletWaitingList().size();
-                if(cloudletCount > 0){
-                    activeVMs++;
-                    activeCloudlets += cloudletCount;
-                }
-            }
-        }
-
-        double consolidationRatio = 0;
-        if(activeVMs != 0 &&  activeCloudlets != 0) {
-            consolidationRatio = (double) activeCloudlets / activeVMs;
-            Log.printlnConcat(
-                    CloudSim.clock() + ": We're getting a consolidationRatio of "
-                            + String.format("%.2f", consolidationRatio) + "."
-            );
-            consolidationTW.add(CloudSim.clock(), consolidationRatio);
-        }
-        else{
-            Log.printlnConcat(
-                    CloudSim.clock() + ": No active hosts to calculate consolidation with?"
-            );
-        }
-
-
-
+        recordConsolidation();
 
         // if some time passed since last processing
         if (currentTime > getLastProcessTime()) {
-            Log.print(currentTime + " ");
+            SimLog.debugPrint(() -> currentTime + " ");
 
             double minTime = updateCloudetProcessingWithoutSchedulingFutureEventsForce();
 
             if (!isDisableMigrations()) {
-                List<VmAllocationPolicy.GuestMapping> migrationMap = getVmAllocationPolicy().optimizeAllocation(
-                        getVmList());
+                List<VmAllocationPolicy.GuestMapping> migrationMap = planMigrations();
 
                 if (migrationMap != null) {
                     for (VmAllocationPolicy.GuestMapping migrate : migrationMap) {
@@ -101,19 +140,21 @@ public class PowerDatacenterCustom extends PowerDatacenter {
                         PowerHost targetHost = (PowerHost) migrate.host();
                         PowerHost oldHost = (PowerHost) vm.getHost();
 
-                        if (oldHost == null) {
-                            Log.formatLine(
-                                    "%.2f: Migration of VM #%d to Host #%d is started",
-                                    currentTime,
-                                    vm.getId(),
-                                    targetHost.getId());
-                        } else {
-                            Log.formatLine(
-                                    "%.2f: Migration of VM #%d from Host #%d to Host #%d is started",
-                                    currentTime,
-                                    vm.getId(),
-                                    oldHost.getId(),
-                                    targetHost.getId());
+                        if (SimLog.isInfoEnabled()) {
+                            if (oldHost == null) {
+                                SimLog.info(String.format(
+                                        "%.2f: Migration of VM #%d to Host #%d is started",
+                                        currentTime,
+                                        vm.getId(),
+                                        targetHost.getId()));
+                            } else {
+                                SimLog.info(String.format(
+                                        "%.2f: Migration of VM #%d from Host #%d to Host #%d is started",
+                                        currentTime,
+                                        vm.getId(),
+                                        oldHost.getId(),
+                                        targetHost.getId()));
+                            }
                         }
 
                         targetHost.addMigratingInGuest(vm);
@@ -132,18 +173,469 @@ public class PowerDatacenterCustom extends PowerDatacenter {
                 }
             }
 
-            // schedules an event to the next time
-            if (minTime != Double.MAX_VALUE) {
-                CloudSim.cancelAll(getId(), new PredicateType(CloudActionTags.VM_DATACENTER_EVENT));
-                send(getId(), getSchedulingInterval(), CloudActionTags.VM_DATACENTER_EVENT);
-            }
+            scheduleNextUpdate(currentTime, minTime);
 
             setLastProcessTime(currentTime);
         }
     }
 
+    // The counts are kept up to date on cloudlet submit/finish and VM destroy, see activeWorkload.
+    private void recordConsolidation() {
+        int activeVMs = activeWorkload.getActiveGuests();
+        int activeCloudlets = activeWorkload.getActiveCloudlets();
+        metrics.set(activeVmsGauge, CloudSim.clock(), activeVMs);
+        metrics.set(activeCloudletsGauge, CloudSim.clock(), activeCloudlets);
+
+        double consolidationRatio = 0;
+        if(activeVMs != 0 &&  activeCloudlets != 0) {
+            consolidationRatio = (double) activeCloudlets / activeVMs;
+            double ratio = consolidationRatio;
+            SimLog.debug(() -> CloudSim.clock() + ": We're getting a consolidationRatio of "
+                    + String.format("%.2f", ratio) + ".");
+            metrics.set(consolidationGauge, CloudSim.clock(), consolidationRatio);
+            consolidationDistribution.add(CloudSim.clock(), consolidationRatio);
+        }
+        else{
+            SimLog.debug(() -> CloudSim.clock() + ": No active hosts to calculate consolidation with?");
+        }
+    }
+
+    // schedules an event to the next time
+    private void scheduleNextUpdate(double currentTime, double minTime) {
+        if (minTime != Double.MAX_VALUE) {
+            CloudSim.cancelAll(getId(), new PredicateType(CloudActionTags.VM_DATACENTER_EVENT));
+            double delay = useAdaptiveInterval()
+                    ? Math.max(minTime - currentTime, CloudSim.getMinTimeBetweenEvents())
+                    : getSchedulingInterval();
+            send(getId(), delay, CloudActionTags.VM_DATACENTER_EVENT);
+        }
+    }
+
+    /**
+     * Schedules each update at the next predicted cloudlet completion instead of a fixed scheduling interval
+     * later, so quiet periods cost one event and bursts are followed change by change. Submitting a cloudlet
+     * and creating or destroying a guest first bring the datacenter up to the current time, then refresh the
+     * affected host, so utilisation only changes at update times. Each host's energy for a time frame is
+     * therefore power(u) * dt at the utilisation it held, and consolidation is sampled after every change.
+     * <p>
+     * The fixed interval is used while migrations are enabled, since the migration policies sample VM
+     * utilisation at it, and for the rest of the run once a cloudlet with a CPU utilisation model other than
+     * {@link UtilizationModelFull} is submitted, since its power has to be sampled.
+     */
+    public void setAdaptiveSchedulingInterval(boolean adaptiveSchedulingInterval) {
+        this.adaptiveSchedulingInterval = adaptiveSchedulingInterval;
+    }
+
+    public boolean isAdaptiveSchedulingInterval() {
+        return adaptiveSchedulingInterval;
+    }
+
+    private boolean useAdaptiveInterval() {
+        return adaptiveSchedulingInterval && isDisableMigrations() && !timeVaryingUtilization;
+    }
+
+    /**
+     * Plans this interval's migrations, or returns null if no planning pass is due.
+     * <p>
+     * With incremental planning, a pass only runs when a host's utilisation crossed a threshold since the
+     * last pass, and the policy is given the VMs of those hosts only. With a wall-time budget, each interval
+     * earns one budget of planning time (unused time is not carried over) and a pass is skipped while the
+     * time spent exceeds the time earned. With a migration budget, the plan is cut to its first migrations.
+     * The hosts behind a skipped or cut pass stay crossed, so the pass is retried once the credit allows.
+     */
+    private List<VmAllocationPolicy.GuestMapping> planMigrations() {
+        if (planningBudgetNanos > 0) {
+            planningCreditNanos = Math.min(planningCreditNanos + planningBudgetNanos, planningBudgetNanos);
+        }
+        List<? extends GuestEntity> candidates = incrementalMigrationPlanning ? crossedHostVms() : getVmList();
+        if (candidates.isEmpty()) {
+            // Only hosts without VMs crossed, there is nothing to move off or onto them
+            crossedHostIds.clear();
+            return null;
+        }
+        if (planningBudgetNanos > 0 && planningCreditNanos <= 0) {
+            skippedPlanningPasses++;
+            return null;
+        }
+
+        long start = System.nanoTime();
+        List<VmAllocationPolicy.GuestMapping> migrationMap = getVmAllocationPolicy().optimizeAllocation(candidates);
+        long elapsed = System.nanoTime() - start;
+        executionTimeHistoryPlanning.add(elapsed / 1e9);
+        metrics.record(planningTimeDistribution, elapsed / 1e9);
+        planningCreditNanos -= elapsed;
+
+        if (migrationMap != null && maxMigrationsPerInterval > 0 && migrationMap.size() > maxMigrationsPerInterval) {
+            migrationMap = new ArrayList<>(migrationMap.subList(0, maxMigrationsPerInterval));
+        } else {
+            crossedHostIds.clear();
+        }
+        return migrationMap;
+    }
+
+    private static final byte UNDER = 0, NORMAL = 1, OVER = 2;
+
+    /** Returns the VMs on the hosts that crossed a planning threshold since the last pass. */
+    private List<Vm> crossedHostVms() {
+        List<Vm> vms = new ArrayList<>();
+        for (int id = crossedHostIds.nextSetBit(0); id >= 0; id = crossedHostIds.nextSetBit(id + 1)) {
+            HostEntity host = getHostById(id);
+            if (host == null) continue;
+            for (GuestEntity guest : host.getGuestList()) {
+                if (guest instanceof Vm vm) {
+                    vms.add(vm);
+                }
+            }
+        }
+        return vms;
+    }
+
+    /**
+     * Marks {@code host} as crossed if its utilisation moved into another planning band. Called wherever a
+     * host's utilisation is updated, so planning never has to scan the hosts.
+     */
+    private void trackPlanningBand(PowerHost host) {
+        if (!incrementalMigrationPlanning) return;
+        int id = host.getId();
+        if (id >= hostPlanningBands.length) {
+            int oldLength = hostPlanningBands.length;
+            hostPlanningBands = Arrays.copyOf(hostPlanningBands, Math.max(id + 1, oldLength << 1));
+            Arrays.fill(hostPlanningBands, oldLength, hostPlanningBands.length, NORMAL);
+        }
+        double utilization = host.getUtilizationOfCpu();
+        byte band = utilization > planningUpperThreshold ? OVER
+                : utilization < planningLowerThreshold ? UNDER
+                : NORMAL;
+        if (band != hostPlanningBands[id]) {
+            hostPlanningBands[id] = band;
+            crossedHostIds.set(id);
+        }
+    }
+
+    /**
+     * Only runs migration planning when a host's CPU utilisation moved below {@code lowerThreshold} or above
+     * {@code upperThreshold}, or back, since the last pass, and hands the policy the VMs of those hosts
+     * instead of every VM. Hosts start in the band between the thresholds. A host that stays outside them
+     * does not start another pass until it crosses again.
+     * <p>
+     * The CloudSim migration policies ignore the VM list they are given and select VMs from their whole host
+     * list, so with them the thresholds only decide when a pass runs, not what it looks at.
+     */
+    public void setIncrementalMigrationPlanning(double lowerThreshold, double upperThreshold) {
+        this.incrementalMigrationPlanning = true;
+        this.planningLowerThreshold = lowerThreshold;
+        this.planningUpperThreshold = upperThreshold;
+    }
+
+    public boolean isIncrementalMigrationPlanning() {
+        return incrementalMigrationPlanning;
+    }
+
+    /**
+     * Limits migration planning per scheduling interval to {@code maxMigrations} started migrations and
+     * {@code maxWallSeconds} of planning time on average, see planMigrations. Zero disables a limit.
+     */
+    public void setMigrationPlanningBudget(int maxMigrations, double maxWallSeconds) {
+        this.maxMigrationsPerInterval = Math.max(maxMigrations, 0);
+        this.planningBudgetNanos = (long) (Math.max(maxWallSeconds, 0) * 1e9);
+        this.planningCreditNanos = planningBudgetNanos;
+    }
+
+    /**
+     * Records every host's utilisation change points in an {@link EnergyAccountant}, which integrates the
+     * hosts' power exactly and gives the energy over any time window. {@link #getPower()} is still computed
+     * per time frame as before. Turning accounting on restarts it.
+     */
+    public void setExactEnergyAccounting(boolean exactEnergyAccounting) {
+        this.energyAccountant = exactEnergyAccounting ? new EnergyAccountant() : null;
+    }
+
+    /** Returns the energy accountant, or null if exact energy accounting is off. */
+    public EnergyAccountant getEnergyAccountant() {
+        return energyAccountant;
+    }
+
+    /** Wall time of each migration planning pass, in seconds, like the policy's getExecutionTimeHistory* lists. */
+    public List<Double> getExecutionTimeHistoryPlanning() {
+        return executionTimeHistoryPlanning;
+    }
+
+    /** Number of intervals whose planning pass was skipped because the wall-time budget was spent. */
+    public int getSkippedPlanningPasses() {
+        return skippedPlanningPasses;
+    }
+
+    /** In adaptive mode, accounts for the time up to now before a cloudlet or guest changes a host's utilisation. */
+    private void closeUpdateWindow() {
+        double currentTime = CloudSim.clock();
+        if (useAdaptiveInterval() && currentTime > getLastProcessTime()) {
+            double minTime = updateCloudetProcessingWithoutSchedulingFutureEventsForce();
+            checkCloudletCompletion();
+            scheduleNextUpdate(currentTime, minTime);
+        }
+    }
+
+    /** In adaptive mode, recomputes a host's utilisation after a change and arms an update for its next completion. */
+    private void refreshHost(HostEntity host) {
+        if (host == null || !useAdaptiveInterval()) return;
+        double currentTime = CloudSim.clock();
+        HostEntity physicalHost = physicalHost(host);
+        double nextTime = physicalHost.updateCloudletsProcessing(currentTime);
+        if (physicalHost instanceof PowerHost powerHost) {
+            if (energyAccountant != null) {
+                energyAccountant.hostUpdated(powerHost, currentTime, nextTime);
+            }
+            recordHostUtilization(powerHost, currentTime);
+            trackPlanningBand(powerHost);
+        }
+        if (nextTime != Double.MAX_VALUE) {
+            send(getId(), Math.max(nextTime - currentTime, CloudSim.getMinTimeBetweenEvents()),
+                    CloudActionTags.VM_DATACENTER_EVENT);
+        }
+        recordConsolidation();
+    }
+
+    private static HostEntity physicalHost(HostEntity host) {
+        while (host instanceof GuestEntity guest && guest.getHost() != null) {
+            host = guest.getHost();
+        }
+        return host;
+    }
+
+    /** The datacenter's metric series, see {@link #setHostMetrics} for the per-host ones. */
+    public MetricRegistry getMetrics() {
+        return metrics;
+    }
+
+    /** Keeps a {@code host.<id>.utilization} gauge of every host's CPU utilisation in {@link #getMetrics()}. */
+    public void setHostMetrics(boolean hostMetrics) {
+        if (!hostMetrics) {
+            hostUtilizationGauges = null;
+            return;
+        }
+        List<PowerHost> hosts = this.<PowerHost>getHostList();
+        int maxId = -1;
+        for (PowerHost host : hosts) {
+            maxId = Math.max(maxId, host.getId());
+        }
+        hostUtilizationGauges = new int[maxId + 1];
+        Arrays.fill(hostUtilizationGauges, -1);
+        for (PowerHost host : hosts) {
+            hostUtilizationGauges[host.getId()] = metrics.gauge("host." + host.getId() + ".utilization");
+        }
+    }
+
+    private void recordHostUtilization(PowerHost host, double time) {
+        if (hostUtilizationGauges == null) return;
+        int id = host.getId();
+        if (id < hostUtilizationGauges.length && hostUtilizationGauges[id] >= 0) {
+            metrics.set(hostUtilizationGauges[id], time, host.getUtilizationOfCpu());
+        }
+    }
+
+    /** Time-weighted distribution of the consolidation ratio, for percentiles and windowed averages. */
+    public TimeWeightedDistribution getConsolidationDistribution() {
+        return consolidationDistribution;
+    }
+
     public double getConsolidationAverage(double time){
-        return consolidationTW.average(time);
+        return metrics.getGaugeAverage(consolidationGauge, time);
+    }
+
+    /**
+     * Sends a VM_DELAYED_DESTROY for every VM that became idle since the last call. A VM is queued once, when
+     * it is created or its last cloudlet finishes, is cancelled or moves away, including a cloudlet that
+     * finishes within its own submission, rather than found by scanning every host. VMs that are
+     * migrating stay queued until the next call; VMs that picked up new work are left to
+     * {@link #scheduleVMDestruction} to spare.
+     */
+    private void reapIdleVms() {
+        Iterator<Vm> it = idleVms.iterator();
+        while (it.hasNext()) {
+            Vm vm = it.next();
+            if (vm.isInMigration()) continue;
+            it.remove();
+            if (vm.getHost() != null && activeWorkload.getActiveCloudlets(vm.getId()) == 0) {
+                send(this.getId(),1,CloudActionTagsEx.VM_DELAYED_DESTROY,vm);
+            }
+        }
+    }
+
+    private void vmBecameIdle(GuestEntity guest) {
+        if (!disableDeallocation && guest instanceof Vm vm) {
+            idleVms.add(vm);
+        }
+    }
+
+    public ActiveCloudletTracker getActiveWorkload() {
+        return activeWorkload;
+    }
+
+    @Override
+    protected void processCloudletSubmit(SimEvent ev, boolean ack) {
+        Cloudlet cloudlet = (Cloudlet) ev.getData();
+        closeUpdateWindow();
+        if (useAdaptiveInterval() && !(cloudlet.getUtilizationModelCpu() instanceof UtilizationModelFull)) {
+            // Back to sampling at the fixed interval
+            timeVaryingUtilization = true;
+            CloudSim.cancelAll(getId(), new PredicateType(CloudActionTags.VM_DATACENTER_EVENT));
+            send(getId(), getSchedulingInterval(), CloudActionTags.VM_DATACENTER_EVENT);
+        }
+        HostEntity host = steadyHosts.isEmpty() && !useAdaptiveInterval() ? null
+                : getVmAllocationPolicy().getHost(cloudlet.getGuestId(), cloudlet.getUserId());
+        if (!steadyHosts.isEmpty()) {
+            if (host != null) {
+                markHostDirty(host);
+            } else {
+                // Nested guests are not in the allocation policy's map
+                markAllHostsDirty();
+            }
+        }
+        submittingCloudlet = cloudlet;
+        submittingCloudletFinished = false;
+        try {
+            super.processCloudletSubmit(ev, ack);
+        } finally {
+            submittingCloudlet = null;
+        }
+
+        // Count it if it made it into the guest's scheduler and is still there
+        if (!submittingCloudletFinished) {
+            switch (cloudlet.getStatus()) {
+                case INEXEC, QUEUED, PAUSED, RESUMED -> activeWorkload.cloudletStarted(cloudlet.getGuestId());
+                default -> {
+                }
+            }
+        } else if (activeWorkload.getActiveCloudlets(cloudlet.getGuestId()) == 0) {
+            // Finished within the submission and left its guest empty
+            GuestEntity guest = findGuest(cloudlet.getGuestId(), cloudlet.getUserId());
+            if (guest != null) {
+                vmBecameIdle(guest);
+            }
+        }
+        refreshHost(host);
+    }
+
+    /** Takes a cancelled cloudlet off the active counts of the guest it was queued or running on. */
+    @Override
+    protected void processCloudletCancel(int cloudletId, int userId, int vmId) {
+        closeUpdateWindow();
+        GuestEntity guest = findGuest(vmId, userId);
+        boolean active = guest != null && isActiveOn(guest, cloudletId);
+        markGuestDirty(guest);
+        super.processCloudletCancel(cloudletId, userId, vmId);
+        if (active && activeWorkload.cloudletFinished(vmId)) {
+            vmBecameIdle(guest);
+        }
+        refreshHost(guest != null ? guest.getHost() : null);
+    }
+
+    /**
+     * Moves a cloudlet's place on the active counts from its guest to the destination guest, if that is in
+     * this datacenter; a datacenter it is sent to counts it on submission.
+     */
+    @Override
+    protected void processCloudletMove(int[] receivedData, CloudActionTags type) {
+        int cloudletId = receivedData[0];
+        int userId = receivedData[1];
+        int vmId = receivedData[2];
+        int vmDestId = receivedData[3];
+        int destId = receivedData[4];
+        closeUpdateWindow();
+        GuestEntity source = findGuest(vmId, userId);
+        GuestEntity destination = destId == getId() ? findGuest(vmDestId, userId) : null;
+        boolean active = source != null && isActiveOn(source, cloudletId);
+        markGuestDirty(source);
+        if (destId == getId()) {
+            markGuestDirty(destination);
+        }
+        super.processCloudletMove(receivedData, type);
+        if (active && activeWorkload.cloudletFinished(vmId)) {
+            vmBecameIdle(source);
+        }
+        if (destination != null && isActiveOn(destination, cloudletId)) {
+            activeWorkload.cloudletStarted(vmDestId);
+        }
+        refreshHost(source != null ? source.getHost() : null);
+        refreshHost(destination != null ? destination.getHost() : null);
+    }
+
+    /** Puts the guest's host back into the update loop, or every host if the guest is nested and not found. */
+    private void markGuestDirty(GuestEntity guest) {
+        if (guest != null) {
+            markHostDirty(guest.getHost());
+        } else {
+            markAllHostsDirty();
+        }
+    }
+
+    private GuestEntity findGuest(int guestId, int userId) {
+        HostEntity host = getVmAllocationPolicy().getHost(guestId, userId);
+        return host != null ? host.getGuest(guestId, userId) : null;
+    }
+
+    /** Returns true if the cloudlet is queued, running or paused on {@code guest}, as processCloudletSubmit counts it. */
+    private static boolean isActiveOn(GuestEntity guest, int cloudletId) {
+        CloudletScheduler scheduler = guest.getCloudletScheduler();
+        return contains(scheduler.getCloudletExecList(), cloudletId)
+                || contains(scheduler.getCloudletWaitingList(), cloudletId)
+                || contains(scheduler.getCloudletPausedList(), cloudletId);
+    }
+
+    private static boolean contains(List<? extends ResCloudlet> cloudlets, int cloudletId) {
+        for (ResCloudlet rcl : cloudlets) {
+            if (rcl.getCloudletId() == cloudletId) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns finished cloudlets to their brokers, as {@link Datacenter#checkCloudletCompletion()} does, and
+     * takes each one off the active counts of the guest it ran on.
+     */
+    @Override
+    protected void checkCloudletCompletion() {
+        for (HostEntity host : getVmAllocationPolicy().getHostList()) {
+            returnFinishedCloudlets(host);
+        }
+        if (useAdaptiveInterval()) {
+            recordConsolidation();
+        }
+    }
+
+    private void returnFinishedCloudlets(HostEntity host) {
+        for (GuestEntity guest : host.getGuestList()) {
+            CloudletScheduler scheduler = guest.getCloudletScheduler();
+            while (scheduler.isFinishedCloudlets()) {
+                Cloudlet cloudlet = scheduler.getNextFinishedCloudlet();
+                if (cloudlet == null) continue;
+                if (cloudlet == submittingCloudlet) {
+                    // Finished before processCloudletSubmit could count it
+                    submittingCloudletFinished = true;
+                } else if (activeWorkload.cloudletFinished(guest.getId())) {
+                    vmBecameIdle(guest);
+                }
+                metrics.increment(cloudletsReturnedCounter);
+                sendNow(cloudlet.getUserId(), CloudActionTags.CLOUDLET_RETURN, cloudlet);
+            }
+            // Nested guests, e.g. containers in a VM
+            if (guest instanceof HostEntity nestedHost) {
+                returnFinishedCloudlets(nestedHost);
+            }
+        }
+    }
+
+    @Override
+    protected void processVmDestroy(SimEvent ev, boolean ack) {
+        GuestEntity guest = (GuestEntity) ev.getData();
+        closeUpdateWindow();
+        HostEntity host = guest.getHost();
+        markHostDirty(host);
+        activeWorkload.guestDestroyed(guest.getId());
+        idleVms.remove(guest);
+        super.processVmDestroy(ev, ack);
+        metrics.increment(vmsDestroyedCounter);
+        refreshHost(host);
     }
 
     @Override
@@ -153,113 +645,336 @@ public class PowerDatacenterCustom extends PowerDatacenter {
         double timeDiff = currentTime - getLastProcessTime();
         double timeFrameDatacenterEnergy = 0.0;
 
-        Log.println("\n\n--------------------------------------------------------------\n\n");
-        Log.formatLine("New resource usage for the time frame starting at %.2f:", currentTime);
+        // In adaptive mode the utilisation changes only at the end of the time frame
+        boolean heldUtilization = useAdaptiveInterval();
 
-        for (PowerHost host : this.<PowerHost> getHostList()) {
-            Log.println();
+        // Checked once, the per-host lines below are the bulk of the datacenter's output
+        boolean logHosts = SimLog.isDebugEnabled();
+        if (logHosts) {
+            SimLog.debug("\n\n--------------------------------------------------------------\n\n");
+            SimLog.debug(String.format("New resource usage for the time frame starting at %.2f:", currentTime));
+        }
+
+        // Steady hosts hold their utilisation, so their energy is power(u) * dt, summed as they come and go
+        double steadyHostsEnergy = timeDiff > 0 ? steadyHostsPower * timeDiff : 0.0;
+        int steadyHostCount = steadyHosts.size();
+        List<PowerHost> hosts = collectDirtyHosts();
+        if (useParallelHostUpdate()) {
+            updateHostsInParallel(hosts, currentTime, timeDiff, heldUtilization);
 
-            double time = host.updateCloudletsProcessing(currentTime); // inform VMs to update processing
-            if (time < minTime) {
-                minTime = time;
+            // Reduce in host order, so minTime and the energy sum match the sequential loops exactly
+            for (int i = 0; i < hosts.size(); i++) {
+                if (hostNextEventTimes[i] < minTime) {
+                    minTime = hostNextEventTimes[i];
+                }
+                if (timeDiff > 0) {
+                    timeFrameDatacenterEnergy += hostTimeFrameEnergies[i];
+                }
+                if (hostsBecameSteady[i]) {
+                    hostBecameSteady(hosts.get(i));
+                }
+                if (energyAccountant != null) {
+                    energyAccountant.hostUpdated(hosts.get(i), currentTime, hostNextEventTimes[i]);
+                }
+                recordHostUtilization(hosts.get(i), currentTime);
+                trackPlanningBand(hosts.get(i));
             }
+        } else {
+            for (PowerHost host : hosts) {
+                double time = host.updateCloudletsProcessing(currentTime); // inform VMs to update processing
+                if (time < minTime) {
+                    minTime = time;
+                }
+                if (energyAccountant != null) {
+                    energyAccountant.hostUpdated(host, currentTime, time);
+                }
+                recordHostUtilization(host, currentTime);
+                trackPlanningBand(host);
+                if (canSkipUpdates(host)) {
+                    hostBecameSteady(host);
+                }
 
-            Log.formatLine(
-                    "%.2f: [Host #%d] utilization is %.2f%%",
-                    currentTime,
-                    host.getId(),
-                    host.getUtilizationOfCpu() * 100);
-        }
-
-        if (timeDiff > 0) {
-            Log.formatLine(
-                    "\nEnergy consumption for the last time frame from %.2f to %.2f:",
-                    getLastProcessTime(),
-                    currentTime);
-
-            for (PowerHost host : this.<PowerHost> getHostList()) {
-                double previousUtilizationOfCpu = host.getPreviousUtilizationOfCpu();
-                double utilizationOfCpu = host.getUtilizationOfCpu();
-                double timeFrameHostEnergy = host.getEnergyLinearInterpolation(
-                        previousUtilizationOfCpu,
-                        utilizationOfCpu,
-                        timeDiff);
-                timeFrameDatacenterEnergy += timeFrameHostEnergy;
-
-                Log.println();
-                Log.formatLine(
-                        "%.2f: [Host #%d] utilization at %.2f was %.2f%%, now is %.2f%%",
-                        currentTime,
-                        host.getId(),
-                        getLastProcessTime(),
-                        previousUtilizationOfCpu * 100,
-                        utilizationOfCpu * 100);
-                Log.formatLine(
-                        "%.2f: [Host #%d] energy is %.2f W*sec",
-                        currentTime,
-                        host.getId(),
-                        timeFrameHostEnergy);
+                if (logHosts) {
+                    SimLog.debug("");
+                    SimLog.debug(String.format(
+                            "%.2f: [Host #%d] utilization is %.2f%%",
+                            currentTime,
+                            host.getId(),
+                            host.getUtilizationOfCpu() * 100));
+                }
             }
 
-            Log.formatLine(
-                    "\n%.2f: Data center's energy is %.2f W*sec\n",
-                    currentTime,
-                    timeFrameDatacenterEnergy);
+            if (timeDiff > 0) {
+                if (logHosts) {
+                    SimLog.debug(String.format(
+                            "\nEnergy consumption for the last time frame from %.2f to %.2f:",
+                            getLastProcessTime(),
+                            currentTime));
+                }
+
+                for (PowerHost host : hosts) {
+                    double previousUtilizationOfCpu = host.getPreviousUtilizationOfCpu();
+                    double utilizationOfCpu = host.getUtilizationOfCpu();
+                    double timeFrameHostEnergy = timeFrameEnergy(host, timeDiff, heldUtilization);
+                    timeFrameDatacenterEnergy += timeFrameHostEnergy;
+
+                    if (logHosts) {
+                        SimLog.debug("");
+                        SimLog.debug(String.format(
+                                "%.2f: [Host #%d] utilization at %.2f was %.2f%%, now is %.2f%%",
+                                currentTime,
+                                host.getId(),
+                                getLastProcessTime(),
+                                previousUtilizationOfCpu * 100,
+                                utilizationOfCpu * 100));
+                        SimLog.debug(String.format(
+                                "%.2f: [Host #%d] energy is %.2f W*sec",
+                                currentTime,
+                                host.getId(),
+                                timeFrameHostEnergy));
+                    }
+                }
+
+                if (logHosts) {
+                    SimLog.debug(String.format(
+                            "\n%.2f: %d steady hosts' energy is %.2f W*sec",
+                            currentTime,
+                            steadyHostCount,
+                            steadyHostsEnergy));
+                    SimLog.debug(String.format(
+                            "\n%.2f: Data center's energy is %.2f W*sec\n",
+                            currentTime,
+                            timeFrameDatacenterEnergy + steadyHostsEnergy));
+                }
+            }
         }
+        timeFrameDatacenterEnergy += steadyHostsEnergy;
 
         setPower(getPower() + timeFrameDatacenterEnergy);
 
 //        /** Remove completed VMs **/
         if(!disableDeallocation){
-            for (PowerHost host : this.<PowerHost>getHostList()) {
-                for (GuestEntity guest : new ArrayList<GuestEntity>(host.getGuestList())) {
-                    if (guest.isInMigration()) continue;
-
-                    if (guest instanceof Vm vm) {
-                        CloudletScheduler scheduler = vm.getCloudletScheduler();
-                        boolean hasActiveCloudlets =
-                                !scheduler.getCloudletExecList().isEmpty() ||
-                                        !scheduler.getCloudletWaitingList().isEmpty() ||
-                                        !scheduler.getCloudletFinishedList().isEmpty();
-
-                        if (!hasActiveCloudlets) {
-                            send(this.getId(),1,CloudActionTagsEx.VM_DELAYED_DESTROY,vm);
-                        }
-                    }
-                }
-            }
+            reapIdleVms();
         }
 
 
 
 
-        Log.println();
+        if (logHosts) {
+            SimLog.debug("");
+        }
 
         setLastProcessTime(currentTime);
+        for (CheckpointRequest request : checkpointsAwaitingUpdate) {
+            schedule(getId(), 0, CloudActionTagsEx.CHECKPOINT, request);
+        }
+        checkpointsAwaitingUpdate.clear();
         return minTime;
     }
 
+    /**
+     * Updates hosts on {@code parallelism} threads instead of one. Each host is processed by exactly one
+     * thread and the per-host results are combined in host order, so a run gives the same finish times and
+     * energy as the sequential update. Hosts are only updated concurrently while debug logging is off, CloudSim's
+     * {@link Log} is disabled (the hosts, VMs and cloudlet schedulers print through it, and their lines
+     * would come out interleaved) and migrations are off, since a migrating VM is read by two hosts. A parallelism of 1 or less restores the
+     * sequential update.
+     */
+    public void setParallelHostProcessing(int parallelism) {
+        if (hostUpdatePool != null) {
+            hostUpdatePool.shutdown();
+        }
+        hostUpdatePool = parallelism > 1 ? new ForkJoinPool(parallelism) : null;
+    }
+
+    public int getParallelHostProcessing() {
+        return hostUpdatePool != null ? hostUpdatePool.getParallelism() : 1;
+    }
+
+    private boolean useParallelHostUpdate() {
+        return hostUpdatePool != null && !SimLog.isDebugEnabled() && Log.isDisabled() && isDisableMigrations();
+    }
+
+    /**
+     * Stops updating hosts that have nothing to update. A host is left out of the update once it runs no
+     * cloudlets and its utilisation did not change in its last update; its energy for each time frame is
+     * then power(u) * dt. Creating or destroying a guest on it, or submitting a cloudlet to it, brings it back.
+     * Skipped hosts and their VMs get no state or utilisation history entries while they are left out, and
+     * hosts are only left out while migrations are off, since migration policies read that history.
+     */
+    public void setIdleHostSkipping(boolean idleHostSkipping) {
+        this.idleHostSkipping = idleHostSkipping;
+        if (!idleHostSkipping) {
+            markAllHostsDirty();
+        }
+    }
+
+    public boolean isIdleHostSkipping() {
+        return idleHostSkipping;
+    }
+
+    public int getSteadyHostCount() {
+        return steadyHosts.size();
+    }
+
+    private boolean canSkipUpdates(PowerHost host) {
+        return idleHostSkipping
+                && isDisableMigrations()
+                && host.getUtilizationOfCpu() == host.getPreviousUtilizationOfCpu()
+                && !hasActiveWorkload(host);
+    }
+
+    private boolean hasActiveWorkload(HostEntity host) {
+        for (GuestEntity guest : host.getGuestList()) {
+            if (activeWorkload.getActiveCloudlets(guest.getId()) > 0 || guest.isInMigration()) {
+                return true;
+            }
+            if (guest instanceof HostEntity nestedHost && hasActiveWorkload(nestedHost)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Puts the physical host of {@code host} back into the update loop. Its guests' schedulers were not
+     * updated while it was skipped, so they are brought up to the current time first; otherwise a cloudlet
+     * submitted now would be credited with the skipped time.
+     */
+    private void markHostDirty(HostEntity host) {
+        host = physicalHost(host);
+        if (host != null && steadyHosts.remove(host)) {
+            steadyHostsPower = steadyHosts.isEmpty() ? 0.0 : steadyHostsPower - steadyPowerByHostId[host.getId()];
+            steadyPowerByHostId[host.getId()] = 0.0;
+            if (dirtyHostIds != null) {
+                dirtyHostIds.set(host.getId());
+            }
+            catchUpGuests(host, CloudSim.clock());
+        }
+    }
+
+    private void markAllHostsDirty() {
+        double currentTime = CloudSim.clock();
+        for (HostEntity host : steadyHosts) {
+            if (dirtyHostIds != null) {
+                dirtyHostIds.set(host.getId());
+            }
+            catchUpGuests(host, currentTime);
+        }
+        steadyHosts.clear();
+        steadyHostsPower = 0.0;
+        Arrays.fill(steadyPowerByHostId, 0.0);
+    }
+
+    private void hostBecameSteady(PowerHost host) {
+        if (steadyHosts.add(host)) {
+            // As in timeFrameEnergy, a host at zero utilisation is switched off and draws nothing
+            double power = host.getUtilizationOfCpu() == 0 ? 0.0 : host.getPower();
+            if (host.getId() >= steadyPowerByHostId.length) {
+                steadyPowerByHostId = Arrays.copyOf(steadyPowerByHostId, Math.max(host.getId() + 1, steadyPowerByHostId.length << 1));
+            }
+            steadyPowerByHostId[host.getId()] = power;
+            steadyHostsPower += power;
+            if (dirtyHostIds != null) {
+                dirtyHostIds.clear(host.getId());
+            }
+        }
+    }
+
+    /** Fills {@link #dirtyHosts} with the hosts that are not steady, in host id order. */
+    private List<PowerHost> collectDirtyHosts() {
+        if (dirtyHostIds == null) {
+            dirtyHostIds = new BitSet();
+            for (HostEntity host : getVmAllocationPolicy().getHostList()) {
+                if (!steadyHosts.contains(host)) {
+                    dirtyHostIds.set(host.getId());
+                }
+            }
+        }
+        dirtyHosts.clear();
+        for (int id = dirtyHostIds.nextSetBit(0); id >= 0; id = dirtyHostIds.nextSetBit(id + 1)) {
+            dirtyHosts.add((PowerHost) getHostById(id));
+        }
+        return dirtyHosts;
+    }
+
+    private static void catchUpGuests(HostEntity host, double currentTime) {
+        for (GuestEntity guest : host.getGuestList()) {
+            guest.updateCloudletsProcessing(currentTime, host.getGuestScheduler().getAllocatedMipsForGuest(guest));
+        }
+    }
+
+    private static double timeFrameEnergy(PowerHost host, double timeDiff, boolean heldUtilization) {
+        double previousUtilizationOfCpu = host.getPreviousUtilizationOfCpu();
+        return host.getEnergyLinearInterpolation(
+                previousUtilizationOfCpu,
+                heldUtilization ? previousUtilizationOfCpu : host.getUtilizationOfCpu(),
+                timeDiff);
+    }
+
+    private void updateHostsInParallel(List<PowerHost> hosts, double currentTime, double timeDiff, boolean heldUtilization) {
+        int hostCount = hosts.size();
+        if (hostNextEventTimes.length < hostCount) {
+            hostNextEventTimes = new double[hostCount];
+            hostTimeFrameEnergies = new double[hostCount];
+            hostsBecameSteady = new boolean[hostCount];
+        }
+        // A few chunks per thread, so a chunk of busy hosts does not hold up the whole update
+        int chunkSize = Math.max(MIN_HOSTS_PER_CHUNK, hostCount / (hostUpdatePool.getParallelism() * 4));
+        hostUpdatePool.invoke(new HostUpdateChunk(hosts, 0, hostCount, chunkSize, currentTime, timeDiff, heldUtilization));
+    }
+
+    private static final int MIN_HOSTS_PER_CHUNK = 32;
+
+    /** Updates hosts [from, to), splitting the range until it is at most chunkSize hosts. */
+    private final class HostUpdateChunk extends RecursiveAction {
+        private final List<PowerHost> hosts;
+        private final int from;
+        private final int to;
+        private final int chunkSize;
+        private final double currentTime;
+        private final double timeDiff;
+        private final boolean heldUtilization;
+
+        HostUpdateChunk(List<PowerHost> hosts, int from, int to, int chunkSize, double currentTime, double timeDiff,
+                        boolean heldUtilization) {
+            this.hosts = hosts;
+            this.from = from;
+            this.to = to;
+            this.chunkSize = chunkSize;
+            this.currentTime = currentTime;
+            this.timeDiff = timeDiff;
+            this.heldUtilization = heldUtilization;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > chunkSize) {
+                int mid = (from + to) >>> 1;
+                invokeAll(new HostUpdateChunk(hosts, from, mid, chunkSize, currentTime, timeDiff, heldUtilization),
+                        new HostUpdateChunk(hosts, mid, to, chunkSize, currentTime, timeDiff, heldUtilization));
+                return;
+            }
+            for (int i = from; i < to; i++) {
+                PowerHost host = hosts.get(i);
+                hostNextEventTimes[i] = host.updateCloudletsProcessing(currentTime); // inform VMs to update processing
+                hostsBecameSteady[i] = canSkipUpdates(host);
+                if (timeDiff > 0) {
+                    hostTimeFrameEnergies[i] = timeFrameEnergy(host, timeDiff, heldUtilization);
+                }
+            }
+        }
+    }
+
     @Override
     protected void processVmCreate(SimEvent ev, boolean ack) {
         Vm vm = (Vm) ev.getData();
         totalVmIdsEverAllocated.add(vm.getId());
+        closeUpdateWindow();
 
         // If VM specifies a preferred host, place it there
         if (vm instanceof PowerVmCustom pvm) {
-            Log.println(this.getName() + ": We're trying to create a PowerVMCustom - using custom allocation logic.");
-            int targetHostId = pvm.getPreferredHostId();
-            HostEntity targetHost = getHostList().get(targetHostId);
-
-            boolean result = false;
-
-            // Allocate through the allocation policy so mapping is stored
-            if (targetHost != null && getVmAllocationPolicy().getHostList().contains(targetHost)) {
-                result = getVmAllocationPolicy().allocateHostForGuest(pvm, targetHost);
-            } else {
-                // If preferred host is invalid, fall back to normal allocation
-                result = getVmAllocationPolicy().allocateHostForGuest(pvm);
-            }
-
+            boolean result = createPowerVmCustom(pvm);
             if (ack) {
                 int[] data = new int[]{
                         getId(),
@@ -269,34 +984,96 @@ public class PowerDatacenterCustom extends PowerDatacenter {
                 send(pvm.getUserId(), CloudSim.getMinTimeBetweenEvents(),
                         CloudActionTags.VM_CREATE_ACK, data);
             }
-
-            if (result) {
-                getVmList().add(pvm);
-
-                if (pvm.isBeingInstantiated()) {
-                    pvm.setBeingInstantiated(false);
-                }
-
-                pvm.updateCloudletsProcessing(
-                        CloudSim.clock(),
-                        getVmAllocationPolicy().getHost(pvm)
-                                .getGuestScheduler()
-                                .getAllocatedMipsForGuest(pvm)
-                );
-            } else {
-                Log.printlnConcat(CloudSim.clock(), ": Datacenter.guestAllocator: Couldn't find a host for PowerVMCustom #", pvm.getId());
-            }
             return; // Skip normal allocation
         }
 
         // Fallback to normal allocation for all other VMs
         super.processVmCreate(ev, ack);
+        if (vm.getHost() != null) {
+            markHostDirty(vm.getHost());
+            refreshHost(vm.getHost());
+            vmBecameIdle(vm);
+        }
+    }
+
+    /**
+     * Places a whole batch of {@link PowerVmCustom}s, as {@link #processVmCreate} would one by one, and answers
+     * with a single {@link GuestBatchAck} instead of one VM_CREATE_ACK per VM.
+     */
+    private void processVmCreateBatch(SimEvent ev) {
+        @SuppressWarnings("unchecked")
+        List<PowerVmCustom> batch = (List<PowerVmCustom>) ev.getData();
+        if (batch.isEmpty()) return;
+        closeUpdateWindow();
+
+        int[] guestIds = new int[batch.size()];
+        boolean[] created = new boolean[batch.size()];
+        for (int i = 0; i < batch.size(); i++) {
+            PowerVmCustom pvm = batch.get(i);
+            totalVmIdsEverAllocated.add(pvm.getId());
+            guestIds[i] = pvm.getId();
+            created[i] = createPowerVmCustom(pvm);
+        }
+        send(batch.getFirst().getUserId(), CloudSim.getMinTimeBetweenEvents(),
+                CloudActionTagsEx.VM_CREATE_BATCH_ACK, new GuestBatchAck(getId(), guestIds, created));
+    }
+
+    private boolean createPowerVmCustom(PowerVmCustom pvm) {
+        SimLog.debug(() -> this.getName() + ": We're trying to create a PowerVMCustom - using custom allocation logic.");
+        HostEntity targetHost = getHostById(pvm.getPreferredHostId());
+
+        boolean result;
+
+        // Allocate through the allocation policy so mapping is stored
+        if (targetHost != null) {
+            result = getVmAllocationPolicy().allocateHostForGuest(pvm, targetHost);
+        } else {
+            // If preferred host is invalid, fall back to normal allocation
+            result = getVmAllocationPolicy().allocateHostForGuest(pvm);
+        }
+
+        if (result) {
+            vmAllocated(pvm);
+        } else {
+            SimLog.error(() -> CloudSim.clock() + ": Datacenter.guestAllocator: Couldn't find a host for PowerVMCustom #" + pvm.getId());
+        }
+        return result;
+    }
+
+    /** Brings a VM the allocation policy has just placed into service. */
+    private void vmAllocated(Vm vm) {
+        markHostDirty(vm.getHost());
+        getVmList().add(vm);
+        vmBecameIdle(vm);
+
+        if (vm.isBeingInstantiated()) {
+            vm.setBeingInstantiated(false);
+        }
+
+        vm.updateCloudletsProcessing(
+                CloudSim.clock(),
+                getVmAllocationPolicy().getHost(vm)
+                        .getGuestScheduler()
+                        .getAllocatedMipsForGuest(vm)
+        );
+        refreshHost(vm.getHost());
+    }
+
+    /** Returns the allocation policy's host with the given id, or null if it has none. */
+    public HostEntity getHostById(int hostId) {
+        if (hostsById == null) {
+            List<HostEntity> hosts = getVmAllocationPolicy().getHostList();
+            hostsById = new IntObjectHashMap<>(hosts.size());
+            for (HostEntity host : hosts) {
+                hostsById.put(host.getId(), host);
+            }
+        }
+        return hostsById.get(hostId);
     }
 
 
     @Override
     public void processEvent(SimEvent ev) {
-        int srcId = -1;
         CloudSimTags tag = ev.getTag();
 
         // Resource characteristics inquiry
@@ -304,9 +1081,222 @@ public class PowerDatacenterCustom extends PowerDatacenter {
             scheduleVMDestruction(ev);
             return;
         }
+        if (tag == CloudActionTagsEx.VM_CREATE_BATCH) {
+            processVmCreateBatch(ev);
+            return;
+        }
+        if (tag == CloudActionTagsEx.CHECKPOINT) {
+            processCheckpoint(ev);
+            return;
+        }
+        if (tag == CloudActionTagsEx.CHECKPOINT_RESTORE) {
+            restoreCheckpoint();
+            return;
+        }
+        // A moved cloudlet lands on a guest this datacenter does not look up
+        if (tag == CloudActionTags.CLOUDLET_MOVE || tag == CloudActionTags.CLOUDLET_MOVE_ACK) {
+            markAllHostsDirty();
+        }
         super.processEvent(ev);
     }
 
+    private record CheckpointRequest(double time, Path file, Live_Kubernetes_Broker_Ex broker, int reposts) {
+
+        CheckpointRequest reposted() {
+            return new CheckpointRequest(time, file, broker, reposts + 1);
+        }
+    }
+
+    // How often a checkpoint is re-posted at the same time to let the deferred events settle, see processCheckpoint
+    private static final int MAX_CHECKPOINT_REPOSTS = 1000;
+
+    // Whether the pending events after the last restore matched the checkpointed ones
+    private boolean restoredEventsMatch = true;
+
+    /**
+     * Writes a {@link SimulationCheckpoint} of this datacenter and {@code broker} to {@code file} at the first
+     * update at or after simulated time {@code time}, so taking it does not change the run. If the broker is
+     * waiting for scheduling decisions then, the checkpoint is retried every scheduling interval until it
+     * can be taken.
+     */
+    public void checkpointAt(double time, Path file, Live_Kubernetes_Broker_Ex broker) {
+        CheckpointRequest request = new CheckpointRequest(time, file, broker, 0);
+        if (CloudSim.running()) {
+            schedule(getId(), Math.max(time - CloudSim.clock(), 0), CloudActionTagsEx.CHECKPOINT, request);
+        } else {
+            checkpointRequests.add(request);
+        }
+    }
+
+    @Override
+    public void startEntity() {
+        super.startEntity();
+        for (CheckpointRequest request : checkpointRequests) {
+            schedule(getId(), request.time(), CloudActionTagsEx.CHECKPOINT, request);
+        }
+        checkpointRequests.clear();
+        if (restoring != null) {
+            schedule(getId(), restoring.getClock(), CloudActionTagsEx.CHECKPOINT_RESTORE);
+        }
+    }
+
+    /**
+     * A checkpoint that is due between updates waits for the next one rather than running an update of its
+     * own, which would add an energy time frame and could return cloudlets earlier than the run would have.
+     * Events for the current time that CloudSim has already moved to its deferred queue cannot be taken off
+     * it, so the checkpoint is re-posted at the same time until neither entity has any left. A re-posted
+     * event only reaches the deferred queue once the current ones have been handled.
+     */
+    private void processCheckpoint(SimEvent ev) {
+        CheckpointRequest request = (CheckpointRequest) ev.getData();
+        if (CloudSim.clock() > getLastProcessTime()) {
+            checkpointsAwaitingUpdate.add(new CheckpointRequest(request.time(), request.file(), request.broker(), 0));
+            return;
+        }
+        int deferred = CloudSim.waiting(getId(), CloudSim.SIM_ANY)
+                + CloudSim.waiting(request.broker().getId(), CloudSim.SIM_ANY);
+        if (deferred > 0 && request.reposts() < MAX_CHECKPOINT_REPOSTS) {
+            schedule(getId(), 0, CloudActionTagsEx.CHECKPOINT, request.reposted());
+            return;
+        }
+        SimulationCheckpoint checkpoint = deferred > 0 ? null : SimulationCheckpoint.capture(this, request.broker());
+        if (checkpoint == null) {
+            SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Checkpoint to " + request.file() + " postponed");
+            schedule(getId(), getSchedulingInterval(), CloudActionTagsEx.CHECKPOINT,
+                    new CheckpointRequest(request.time(), request.file(), request.broker(), 0));
+        } else if (checkpoint.write(request.file())) {
+            SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Checkpoint written to " + request.file());
+        }
+    }
+
+    void captureCheckpoint(SimulationCheckpoint checkpoint) {
+        checkpoint.power = getPower();
+        checkpoint.migrationCount = getMigrationCount();
+        checkpoint.metrics = SimulationCheckpoint.toBytes(out -> {
+            metrics.writeTo(out);
+            consolidationDistribution.writeTo(out);
+        });
+        checkpoint.vmIdsEverAllocated = totalVmIdsEverAllocated.stream().mapToInt(Integer::intValue).toArray();
+
+        List<Vm> vms = getVmList();
+        List<Integer> guestIds = new ArrayList<>(vms.size());
+        List<Integer> hostIds = new ArrayList<>(vms.size());
+        List<Integer> running = new ArrayList<>();
+        List<Long> remaining = new ArrayList<>();
+        List<Integer> paused = new ArrayList<>();
+        List<Integer> pausedGuests = new ArrayList<>();
+        List<Long> pausedRemaining = new ArrayList<>();
+        for (Vm vm : vms) {
+            if (vm.getHost() == null) continue;
+            guestIds.add(vm.getId());
+            hostIds.add(vm.getHost().getId());
+            CloudletScheduler scheduler = vm.getCloudletScheduler();
+            for (ResCloudlet rcl : scheduler.<ResCloudlet>getCloudletExecList()) {
+                running.add(rcl.getCloudlet().getCloudletId());
+                remaining.add(remainingLengthPerPe(rcl));
+            }
+            for (ResCloudlet rcl : scheduler.<ResCloudlet>getCloudletWaitingList()) {
+                running.add(rcl.getCloudlet().getCloudletId());
+                remaining.add(remainingLengthPerPe(rcl));
+            }
+            for (ResCloudlet rcl : scheduler.<ResCloudlet>getCloudletPausedList()) {
+                paused.add(rcl.getCloudlet().getCloudletId());
+                pausedGuests.add(vm.getId());
+                pausedRemaining.add(remainingLengthPerPe(rcl));
+            }
+        }
+        checkpoint.placedGuestIds = guestIds.stream().mapToInt(Integer::intValue).toArray();
+        checkpoint.placedHostIds = hostIds.stream().mapToInt(Integer::intValue).toArray();
+        checkpoint.runningCloudletIds = running.stream().mapToInt(Integer::intValue).toArray();
+        checkpoint.remainingLengths = remaining.stream().mapToLong(Long::longValue).toArray();
+        checkpoint.pausedCloudletIds = paused.stream().mapToInt(Integer::intValue).toArray();
+        checkpoint.pausedGuestIds = pausedGuests.stream().mapToInt(Integer::intValue).toArray();
+        checkpoint.pausedLengths = pausedRemaining.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // The remaining length is summed over the cloudlet's PEs, but setCloudletLength takes the length per PE
+    private static long remainingLengthPerPe(ResCloudlet rcl) {
+        return Math.ceilDiv(rcl.getRemainingCloudletLength(), Math.max(rcl.getCloudlet().getNumberOfPes(), 1));
+    }
+
+    /**
+     * Returns false if the pending events after the last {@link #restoreFrom restore} differed from the
+     * checkpointed ones. The difference is logged as an error.
+     */
+    public boolean restoredEventsMatch() {
+        return restoredEventsMatch;
+    }
+
+    /** See {@link SimulationCheckpoint#restore}. The state is put back once the clock reaches the checkpoint. */
+    void restoreFrom(SimulationCheckpoint checkpoint, Live_Kubernetes_Broker_Ex broker) {
+        this.restoring = checkpoint;
+        this.restoringBroker = broker;
+    }
+
+    private void restoreCheckpoint() {
+        SimulationCheckpoint checkpoint = restoring;
+        Live_Kubernetes_Broker_Ex broker = restoringBroker;
+        restoring = null;
+        restoringBroker = null;
+
+        IntObjectHashMap<GuestEntity> guests = new IntObjectHashMap<>(broker.getGuestList().size());
+        for (GuestEntity guest : broker.getGuestList()) {
+            guests.put(guest.getId(), guest);
+        }
+        for (int i = 0; i < checkpoint.placedGuestIds.length; i++) {
+            GuestEntity guest = guests.get(checkpoint.placedGuestIds[i]);
+            HostEntity host = getHostById(checkpoint.placedHostIds[i]);
+            if (guest instanceof Vm vm && host != null && getVmAllocationPolicy().allocateHostForGuest(vm, host)) {
+                vmAllocated(vm);
+            } else {
+                int guestId = checkpoint.placedGuestIds[i];
+                int hostId = checkpoint.placedHostIds[i];
+                SimLog.error(() -> CloudSim.clock() + ": " + getName() + ": Could not place VM #" + guestId
+                        + " back on Host #" + hostId);
+            }
+        }
+
+        totalVmIdsEverAllocated.clear();
+        for (int vmId : checkpoint.vmIdsEverAllocated) {
+            totalVmIdsEverAllocated.add(vmId);
+        }
+        SimulationCheckpoint.restoreMetrics(checkpoint.metrics, in -> {
+            metrics.readFrom(in);
+            consolidationDistribution.readFrom(in);
+        });
+        setMigrationCount(checkpoint.migrationCount);
+        setPower(checkpoint.power);
+        setLastProcessTime(CloudSim.clock());
+
+        IntObjectHashMap<Cloudlet> cloudlets = new IntObjectHashMap<>(broker.getCloudletList().size());
+        for (Cloudlet cloudlet : broker.getCloudletList()) {
+            cloudlets.put(cloudlet.getCloudletId(), cloudlet);
+        }
+        checkpoint.resendEvents(this, cloudlets, guests);
+
+        SimulationCheckpoint restored = new SimulationCheckpoint();
+        restored.clock = CloudSim.clock();
+        restored.captureEvents(getId(), broker.getId());
+        String difference = restored.comparePendingEvents(checkpoint);
+        restoredEventsMatch = difference == null;
+        if (difference != null) {
+            SimLog.error(() -> CloudSim.clock() + ": " + getName() + ": Restored run has " + difference);
+        }
+
+        // Paused cloudlets go back on their VM through the usual submit, then are paused again straight away
+        for (int i = 0; i < checkpoint.pausedCloudletIds.length; i++) {
+            Cloudlet cloudlet = cloudlets.get(checkpoint.pausedCloudletIds[i]);
+            if (cloudlet == null) continue;
+            cloudlet.setCloudletLength(Math.max(checkpoint.pausedLengths[i], 1));
+            cloudlet.setGuestId(checkpoint.pausedGuestIds[i]);
+            CloudSim.send(broker.getId(), getId(), 0, CloudActionTags.CLOUDLET_SUBMIT, cloudlet);
+            CloudSim.send(broker.getId(), getId(), 0, CloudActionTags.CLOUDLET_PAUSE,
+                    new int[]{cloudlet.getCloudletId(), broker.getId(), cloudlet.getGuestId()});
+        }
+        sendNow(broker.getId(), CloudActionTagsEx.CHECKPOINT_RESTORE, checkpoint);
+        SimLog.info(() -> CloudSim.clock() + ": " + getName() + ": Restored checkpoint");
+    }
+
     private void scheduleVMDestruction(SimEvent ev){
         Vm vm = (Vm) ev.getData();
         CloudletScheduler scheduler = vm.getCloudletScheduler();
@@ -316,18 +1306,24 @@ public class PowerDatacenterCustom extends PowerDatacenter {
                         !scheduler.getCloudletFinishedList().isEmpty();
 
         if(!hasActiveCloudlets){
-            Log.println(CloudSim.clock()  + ": VM #" + vm.getId() + " has been DEALLOCATED and DESTROYED from host");
+            SimLog.info(() -> CloudSim.clock()  + ": VM #" + vm.getId() + " has been DEALLOCATED and DESTROYED from host");
+            closeUpdateWindow();
+            HostEntity host = vm.getHost();
+            markHostDirty(host);
             getVmAllocationPolicy().deallocateHostForGuest(vm);
             getVmList().remove(vm);
+            activeWorkload.guestDestroyed(vm.getId());
+            metrics.increment(vmsDestroyedCounter);
             int brokerId = vm.getUserId(); // This is the owning broker's ID
             sendNow(brokerId, CloudActionTags.VM_DESTROY_ACK, new int[]{
                     getId(),     // Datacenter ID
                     vm.getId(),  // VM ID
                     CloudSimTags.TRUE
             });
+            refreshHost(host);
         }
         else {
-            Log.println(CloudSim.clock()  + ": VM #" + vm.getId() + " was PREVENTED from being destroyed.");
+            SimLog.info(() -> CloudSim.clock()  + ": VM #" + vm.getId() + " was PREVENTED from being destroyed.");
         }
 
     }
@@ -0,0 +1,288 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+/**
+ * {@link SchedulingBackend} decorator that writes every call made to {@code delegate}, and every decision
+ * it returns, to a {@link SchedulingLog}. The log can be fed back with {@link ReplaySchedulingBackend}.
+ * <p>
+ * Asynchronous calls are passed to the delegate's own Async variants, so recording does not make them
+ * block. Their record is written when the broker takes their decisions (see
+ * {@link SchedulingBackend#decisionsTaken}), on the event loop, and holds the wall-clock round trip that
+ * {@link #roundTripSeconds} returned for them, so a replay can delay the decisions by the same amount.
+ * <p>
+ * Recording problems never affect the simulation: after the first write error, recording stops and calls
+ * are just passed through.
+ */
+public class RecordingSchedulingBackend implements SchedulingBackend, Closeable {
+
+    private final SchedulingBackend delegate;
+    private final DataOutputStream out;
+    private boolean recording = true;
+    private int asyncCalls = 0;
+    // Asynchronous calls whose decisions have not been taken yet, by the future returned for them
+    private final Map<CompletableFuture<List<ScheduledPod>>, PendingCall> pendingCalls = new IdentityHashMap<>();
+
+    /**
+     * Starts a new log in {@code logFile}, replacing whatever it held, so a replay of the file always
+     * replays this run.
+     */
+    public RecordingSchedulingBackend(SchedulingBackend delegate, Path logFile) throws IOException {
+        this.delegate = delegate;
+        this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(logFile,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)));
+        out.writeInt(SchedulingLog.MAGIC);
+        out.writeInt(SchedulingLog.VERSION);
+        out.flush();
+    }
+
+    @Override
+    public boolean syncAllNodes(Collection<? extends GuestEntity> nodes) {
+        boolean success = delegate.syncAllNodes(nodes);
+        if (recording) {
+            try {
+                out.writeByte(SchedulingLog.FULL_NODE_SYNC);
+                writeGuestIds(nodes);
+                out.writeBoolean(success);
+                out.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public boolean syncNodeDelta(Collection<? extends GuestEntity> added, Collection<Integer> removedIds) {
+        boolean success = delegate.syncNodeDelta(added, removedIds);
+        if (recording) {
+            try {
+                out.writeByte(SchedulingLog.NODE_DELTA);
+                writeGuestIds(added);
+                out.writeInt(removedIds.size());
+                for (int id : removedIds) {
+                    out.writeInt(id);
+                }
+                out.writeBoolean(success);
+                out.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public int submitBatch(List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision) {
+        return recordDecisions(SchedulingLog.SUBMIT_BATCH, cloudlets, onDecision,
+                recorder -> delegate.submitBatch(cloudlets, recorder));
+    }
+
+    @Override
+    public int completeAndReschedule(List<? extends Cloudlet> finished, Consumer<ScheduledPod> onDecision) {
+        return recordDecisions(SchedulingLog.COMPLETE_AND_RESCHEDULE, finished, onDecision,
+                recorder -> delegate.completeAndReschedule(finished, recorder));
+    }
+
+    @Override
+    public CompletableFuture<List<ScheduledPod>> submitBatchAsync(List<? extends Cloudlet> cloudlets) {
+        long sentWallNanos = System.nanoTime();
+        return track(SchedulingLog.SUBMIT_BATCH, cloudlets, sentWallNanos, delegate.submitBatchAsync(cloudlets));
+    }
+
+    @Override
+    public CompletableFuture<List<ScheduledPod>> completeAndRescheduleAsync(List<? extends Cloudlet> finished) {
+        long sentWallNanos = System.nanoTime();
+        return track(SchedulingLog.COMPLETE_AND_RESCHEDULE, finished, sentWallNanos,
+                delegate.completeAndRescheduleAsync(finished));
+    }
+
+    /** Returns the delegate's answer, and keeps it for the call's record. */
+    @Override
+    public double roundTripSeconds(CompletableFuture<List<ScheduledPod>> decisions, double measuredSeconds) {
+        PendingCall call = pendingCalls.get(decisions);
+        if (call == null) {
+            return delegate.roundTripSeconds(decisions, measuredSeconds);
+        }
+        call.roundTripSeconds = delegate.roundTripSeconds(call.response, measuredSeconds);
+        return call.roundTripSeconds;
+    }
+
+    /** Writes the call's whole record. Only called once its decisions have arrived, so it does not block. */
+    @Override
+    public void decisionsTaken(CompletableFuture<List<ScheduledPod>> decisions) {
+        PendingCall call = pendingCalls.remove(decisions);
+        if (call == null) {
+            delegate.decisionsTaken(decisions);
+            return;
+        }
+        delegate.decisionsTaken(call.response);
+        if (!recording) return;
+
+        List<ScheduledPod> result;
+        try {
+            result = decisions.join();
+        } catch (CompletionException e) {
+            result = null;
+        }
+        try {
+            out.writeByte(SchedulingLog.asyncType(call.type));
+            out.writeInt(call.number);
+            out.writeDouble(call.roundTripSeconds());
+            writeCloudletIds(call.cloudlets);
+            if (result != null) {
+                for (ScheduledPod pod : result) {
+                    SchedulingLog.writeDecision(out, pod);
+                }
+            }
+            out.writeByte(SchedulingLog.END_OF_DECISIONS);
+            out.writeInt(result != null ? result.size() : -1);
+            out.flush();
+        } catch (IOException e) {
+            stopRecording(e);
+        }
+    }
+
+    @Override
+    public void reset() {
+        delegate.reset();
+        if (recording) {
+            try {
+                out.writeByte(SchedulingLog.RESET);
+                out.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        recording = false;
+        out.close();
+    }
+
+    /**
+     * Writes the request header, then each decision as the delegate streams it, then the call's result.
+     */
+    private int recordDecisions(byte type, List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision,
+                                ToIntFunction<Consumer<ScheduledPod>> call) {
+        if (recording) {
+            try {
+                writeRequest(type, cloudlets);
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+
+        int result = call.applyAsInt(pod -> {
+            if (recording) {
+                try {
+                    SchedulingLog.writeDecision(out, pod);
+                } catch (IOException e) {
+                    stopRecording(e);
+                }
+            }
+            onDecision.accept(pod);
+        });
+
+        if (recording) {
+            try {
+                out.writeByte(SchedulingLog.END_OF_DECISIONS);
+                out.writeInt(result);
+                out.flush();
+            } catch (IOException e) {
+                stopRecording(e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Numbers the call and returns a future that completes after its arrival time has been noted. The
+     * call is numbered even when recording has stopped, so the numbers keep following the send order.
+     */
+    private CompletableFuture<List<ScheduledPod>> track(byte type, List<? extends Cloudlet> cloudlets,
+                                                         long sentWallNanos,
+                                                         CompletableFuture<List<ScheduledPod>> response) {
+        int number = asyncCalls++;
+        if (!recording) return response;
+        PendingCall call = new PendingCall(type, number, List.copyOf(cloudlets), response, sentWallNanos);
+        CompletableFuture<List<ScheduledPod>> decisions =
+                response.whenComplete((result, error) -> call.receivedWallNanos = System.nanoTime());
+        pendingCalls.put(decisions, call);
+        return decisions;
+    }
+
+    private void writeRequest(byte type, List<? extends Cloudlet> cloudlets) throws IOException {
+        out.writeByte(type);
+        writeCloudletIds(cloudlets);
+    }
+
+    private void writeCloudletIds(List<? extends Cloudlet> cloudlets) throws IOException {
+        out.writeInt(cloudlets.size());
+        for (Cloudlet cloudlet : cloudlets) {
+            out.writeInt(cloudlet.getCloudletId());
+        }
+    }
+
+    private void writeGuestIds(Collection<? extends GuestEntity> guests) throws IOException {
+        out.writeInt(guests.size());
+        for (GuestEntity guest : guests) {
+            out.writeInt(guest.getId());
+        }
+    }
+
+    private void stopRecording(IOException e) {
+        recording = false;
+        SimLog.error(() -> "Scheduling log write failed, recording stopped: " + e.getMessage());
+    }
+
+    private final class PendingCall {
+        final byte type;
+        final int number;
+        final List<? extends Cloudlet> cloudlets;
+        // The delegate's own future
+        final CompletableFuture<List<ScheduledPod>> response;
+        final long sentWallNanos;
+        volatile long receivedWallNanos;
+        double roundTripSeconds = Double.NaN;
+
+        PendingCall(byte type, int number, List<? extends Cloudlet> cloudlets,
+                    CompletableFuture<List<ScheduledPod>> response, long sentWallNanos) {
+            this.type = type;
+            this.number = number;
+            this.cloudlets = cloudlets;
+            this.response = response;
+            this.sentWallNanos = sentWallNanos;
+        }
+
+        /**
+         * The round trip the broker counted for the call, or if it never asked (its delay did not depend on
+         * it), the delegate's answer for the time from sending the call to its answer arriving.
+         */
+        double roundTripSeconds() {
+            if (Double.isNaN(roundTripSeconds)) {
+                roundTripSeconds = delegate.roundTripSeconds(response, (receivedWallNanos - sentWallNanos) / 1e9);
+            }
+            return roundTripSeconds;
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * {@link SchedulingBackend} that answers every call from a log written by {@link RecordingSchedulingBackend},
+ * without contacting a control plane. Given the same simulation, it hands the broker exactly the decisions
+ * of the recorded run, in the same order.
+ * <p>
+ * Every call is checked against the next record. If the simulation asks for something the recorded run
+ * did not (a different call, or a different set of nodes or cloudlets), the replay is reported as diverged.
+ * A diverged or exhausted replay fails every later call, as an unreachable control plane would.
+ * <p>
+ * An asynchronous call is answered straight away from its record, found by call number ahead of the
+ * current position through a second reader, and {@link #roundTripSeconds} reports the round trip the
+ * recorded run measured for it. The broker therefore delays the decisions exactly as it did when recording.
+ */
+public class ReplaySchedulingBackend implements SchedulingBackend, Closeable {
+
+    // Reads the synchronous records in order, skipping asynchronous ones
+    private final DataInputStream in;
+    // Reads ahead for asynchronous records, skipping synchronous ones
+    private final DataInputStream asyncIn;
+    private boolean failed = false;
+    private boolean closed = false;
+    private int recordsReplayed = 0;
+    private int asyncCalls = 0;
+    // Asynchronous records read ahead of the call they answer, by call number
+    private final Map<Integer, AsyncRecord> asyncRecordsAhead = new HashMap<>();
+    // Recorded round trip of each asynchronous call whose decisions have not been taken yet
+    private final Map<CompletableFuture<List<ScheduledPod>>, Double> roundTrips = new IdentityHashMap<>();
+
+    public ReplaySchedulingBackend(Path logFile) throws IOException {
+        this.in = open(logFile);
+        try {
+            this.asyncIn = open(logFile);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    private static DataInputStream open(Path logFile) throws IOException {
+        DataInputStream log = new DataInputStream(new BufferedInputStream(Files.newInputStream(logFile)));
+        if (log.readInt() != SchedulingLog.MAGIC || log.readInt() != SchedulingLog.VERSION) {
+            log.close();
+            throw new IOException(logFile + " is not a version " + SchedulingLog.VERSION + " scheduling log");
+        }
+        return log;
+    }
+
+    @Override
+    public boolean syncAllNodes(Collection<? extends GuestEntity> nodes) {
+        try {
+            if (!nextRecordIs(SchedulingLog.FULL_NODE_SYNC)) return false;
+            checkGuestIds(nodes, SchedulingLog.FULL_NODE_SYNC);
+            boolean success = in.readBoolean();
+            recordsReplayed++;
+            return success;
+        } catch (IOException e) {
+            return fail(e);
+        }
+    }
+
+    @Override
+    public boolean syncNodeDelta(Collection<? extends GuestEntity> added, Collection<Integer> removedIds) {
+        try {
+            if (!nextRecordIs(SchedulingLog.NODE_DELTA)) return false;
+            checkGuestIds(added, SchedulingLog.NODE_DELTA);
+            int removed = in.readInt();
+            boolean matches = removed == removedIds.size();
+            Iterator<Integer> it = removedIds.iterator();
+            for (int i = 0; i < removed; i++) {
+                int id = in.readInt();
+                matches &= it.hasNext() && it.next() == id;
+            }
+            if (!matches) {
+                return diverged(SchedulingLog.NODE_DELTA, "removed nodes differ");
+            }
+            boolean success = in.readBoolean();
+            recordsReplayed++;
+            return success;
+        } catch (IOException e) {
+            return fail(e);
+        }
+    }
+
+    @Override
+    public int submitBatch(List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision) {
+        return replayDecisions(SchedulingLog.SUBMIT_BATCH, cloudlets, onDecision);
+    }
+
+    @Override
+    public int completeAndReschedule(List<? extends Cloudlet> finished, Consumer<ScheduledPod> onDecision) {
+        return replayDecisions(SchedulingLog.COMPLETE_AND_RESCHEDULE, finished, onDecision);
+    }
+
+    @Override
+    public CompletableFuture<List<ScheduledPod>> submitBatchAsync(List<? extends Cloudlet> cloudlets) {
+        return track(SchedulingLog.SUBMIT_BATCH, cloudlets);
+    }
+
+    @Override
+    public CompletableFuture<List<ScheduledPod>> completeAndRescheduleAsync(List<? extends Cloudlet> finished) {
+        return track(SchedulingLog.COMPLETE_AND_RESCHEDULE, finished);
+    }
+
+    @Override
+    public double roundTripSeconds(CompletableFuture<List<ScheduledPod>> decisions, double measuredSeconds) {
+        return roundTrips.getOrDefault(decisions, measuredSeconds);
+    }
+
+    @Override
+    public void decisionsTaken(CompletableFuture<List<ScheduledPod>> decisions) {
+        roundTrips.remove(decisions);
+    }
+
+    /** Answers the next asynchronous call from its record, with a future that is already done. */
+    private CompletableFuture<List<ScheduledPod>> track(byte type, List<? extends Cloudlet> cloudlets) {
+        int number = asyncCalls++;
+        byte recordType = SchedulingLog.asyncType(type);
+        AsyncRecord record = failed ? null : findAsyncRecord(number, recordType);
+        if (record == null) {
+            return CompletableFuture.failedFuture(new IOException("No recorded answer for the "
+                    + SchedulingLog.recordName(recordType)));
+        }
+
+        boolean matches = record.type() == recordType && record.cloudletIds().length == cloudlets.size();
+        for (int i = 0; matches && i < cloudlets.size(); i++) {
+            matches = cloudlets.get(i).getCloudletId() == record.cloudletIds()[i];
+        }
+        if (!matches) {
+            diverged(recordType, "asynchronous call " + number + " was a " + SchedulingLog.recordName(record.type())
+                    + " of different cloudlets");
+            return CompletableFuture.failedFuture(new IOException("Replay diverged"));
+        }
+        recordsReplayed++;
+
+        CompletableFuture<List<ScheduledPod>> decisions = record.result() < 0
+                ? CompletableFuture.failedFuture(new IOException("Replayed " + SchedulingLog.recordName(recordType) + " failed"))
+                : CompletableFuture.completedFuture(record.decisions());
+        roundTrips.put(decisions, record.roundTripSeconds());
+        return decisions;
+    }
+
+    /** Returns the record of asynchronous call {@code number}, or null if the log has none. */
+    private AsyncRecord findAsyncRecord(int number, byte type) {
+        AsyncRecord found = asyncRecordsAhead.remove(number);
+        try {
+            while (found == null) {
+                byte recorded;
+                try {
+                    recorded = asyncIn.readByte();
+                } catch (EOFException e) {
+                    failed = true;
+                    SimLog.error(() -> "Scheduling log has no record for asynchronous call " + number + "; expected a "
+                            + SchedulingLog.recordName(type));
+                    return null;
+                }
+                if (!SchedulingLog.isAsync(recorded)) {
+                    SchedulingLog.skipRecord(asyncIn, recorded);
+                    continue;
+                }
+                AsyncRecord record = readAsyncRecord(recorded);
+                if (record.number() == number) {
+                    found = record;
+                } else {
+                    asyncRecordsAhead.put(record.number(), record);
+                }
+            }
+            return found;
+        } catch (IOException e) {
+            fail(e);
+            return null;
+        }
+    }
+
+    private AsyncRecord readAsyncRecord(byte type) throws IOException {
+        int number = asyncIn.readInt();
+        double roundTripSeconds = asyncIn.readDouble();
+        int[] cloudletIds = new int[asyncIn.readInt()];
+        for (int i = 0; i < cloudletIds.length; i++) {
+            cloudletIds[i] = asyncIn.readInt();
+        }
+        List<ScheduledPod> decisions = new ArrayList<>();
+        byte status;
+        while ((status = asyncIn.readByte()) != SchedulingLog.END_OF_DECISIONS) {
+            decisions.add(SchedulingLog.readDecision(asyncIn, status));
+        }
+        return new AsyncRecord(type, number, roundTripSeconds, cloudletIds, decisions, asyncIn.readInt());
+    }
+
+    @Override
+    public void reset() {
+        if (closed) return;
+        try {
+            if (nextRecordIs(SchedulingLog.RESET)) {
+                recordsReplayed++;
+                SimLog.info(() -> "Replayed " + recordsReplayed + " scheduling log record(s).");
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        try {
+            in.close();
+        } finally {
+            asyncIn.close();
+        }
+    }
+
+    /** Returns true while every call so far has matched the log. */
+    public boolean isInSync() {
+        return !failed;
+    }
+
+    public int getRecordsReplayed() {
+        return recordsReplayed;
+    }
+
+    private int replayDecisions(byte type, List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision) {
+        try {
+            if (!nextRecordIs(type)) return -1;
+            int requested = in.readInt();
+            boolean matches = requested == cloudlets.size();
+            for (int i = 0; i < requested; i++) {
+                int id = in.readInt();
+                matches &= i < cloudlets.size() && cloudlets.get(i).getCloudletId() == id;
+            }
+            if (!matches) {
+                diverged(type, "cloudlets differ");
+                return -1;
+            }
+
+            byte status;
+            while ((status = in.readByte()) != SchedulingLog.END_OF_DECISIONS) {
+                onDecision.accept(SchedulingLog.readDecision(in, status));
+            }
+            int result = in.readInt();
+            recordsReplayed++;
+            return result;
+        } catch (IOException e) {
+            fail(e);
+            return -1;
+        }
+    }
+
+    private boolean nextRecordIs(byte type) throws IOException {
+        if (failed) return false;
+        byte recorded;
+        do {
+            try {
+                recorded = in.readByte();
+            } catch (EOFException e) {
+                failed = true;
+                SimLog.error(() -> "Scheduling log exhausted after " + recordsReplayed + " record(s); expected a "
+                        + SchedulingLog.recordName(type));
+                return false;
+            }
+            // Asynchronous records are answered from the reader that looks ahead
+            if (SchedulingLog.isAsync(recorded)) {
+                SchedulingLog.skipRecord(in, recorded);
+            }
+        } while (SchedulingLog.isAsync(recorded));
+        if (recorded != type) {
+            return diverged(type, "recorded a " + SchedulingLog.recordName(recorded));
+        }
+        return true;
+    }
+
+    private void checkGuestIds(Collection<? extends GuestEntity> guests, byte type) throws IOException {
+        int recorded = in.readInt();
+        boolean matches = recorded == guests.size();
+        Iterator<? extends GuestEntity> it = guests.iterator();
+        for (int i = 0; i < recorded; i++) {
+            int id = in.readInt();
+            matches &= it.hasNext() && it.next().getId() == id;
+        }
+        if (!matches) {
+            diverged(type, "nodes differ");
+            throw new IOException("Replay diverged");
+        }
+    }
+
+    private boolean diverged(byte type, String reason) {
+        if (!failed) {
+            failed = true;
+            SimLog.error(() -> "Replay diverged from the scheduling log at record " + (recordsReplayed + 1)
+                    + " (" + SchedulingLog.recordName(type) + "): " + reason);
+        }
+        return false;
+    }
+
+    private boolean fail(IOException e) {
+        if (!failed) {
+            failed = true;
+            SimLog.error(() -> "Error reading scheduling log: " + e.getMessage());
+        }
+        return false;
+    }
+
+    private record AsyncRecord(byte type, int number, double roundTripSeconds, int[] cloudletIds,
+                               List<ScheduledPod> decisions, int result) {
+    }
+}
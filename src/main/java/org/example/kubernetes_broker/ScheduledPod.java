@@ -0,0 +1,12 @@
+package org.example.kubernetes_broker;
+
+/**
+ * A single scheduling decision returned by the control plane for one pod (cloudlet).
+ *
+ * @param id       the cloudlet id
+ * @param status   "Scheduled", "Unschedulable" or "Unknown"
+ * @param vmId     the CloudSim guest the pod was bound to, or -1 if none
+ * @param nodeName the Kubernetes node name, or null if the adapter did not send one
+ */
+public record ScheduledPod(int id, String status, int vmId, String nodeName) {
+}
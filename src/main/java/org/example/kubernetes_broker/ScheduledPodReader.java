@@ -0,0 +1,68 @@
+package org.example.kubernetes_broker;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.function.Consumer;
+
+/**
+ * Token-level reader for the pod arrays returned by /schedule-pods and /pods/update-state.
+ * Each pod is handed to the consumer as soon as its object has been parsed, so callers can
+ * act on early decisions while the rest of the response is still arriving.
+ */
+public final class ScheduledPodReader {
+
+    private ScheduledPodReader() {
+    }
+
+    /**
+     * Reads a JSON array of pods from {@code in}. A JSON {@code null} (what the adapter sends for
+     * an empty Go slice) is treated as an empty array.
+     *
+     * @return the number of pods handed to {@code consumer}
+     * @throws IOException if the stream is not a JSON array of objects
+     */
+    public static int read(InputStream in, Consumer<ScheduledPod> consumer) throws IOException {
+        try (JsonParser parser = JsonPayloadWriter.JSON_FACTORY.createParser(in)) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.VALUE_NULL) {
+                return 0;
+            }
+            if (token != JsonToken.START_ARRAY) {
+                throw new IOException("Expected an array in response, got: " + token);
+            }
+
+            int count = 0;
+            while ((token = parser.nextToken()) != JsonToken.END_ARRAY) {
+                if (token != JsonToken.START_OBJECT) {
+                    throw new IOException("Expected a pod object, got: " + token);
+                }
+                consumer.accept(readPod(parser));
+                count++;
+            }
+            return count;
+        }
+    }
+
+    private static ScheduledPod readPod(JsonParser parser) throws IOException {
+        int id = 0;
+        String status = null;
+        int vmId = -1;
+        String nodeName = null;
+
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            switch (field) {
+                case "id" -> id = parser.getValueAsInt();
+                case "status" -> status = parser.getValueAsString();
+                case "vmId" -> vmId = value == JsonToken.VALUE_NULL ? -1 : parser.getValueAsInt();
+                case "nodeName" -> nodeName = parser.getValueAsString();
+                default -> parser.skipChildren();
+            }
+        }
+        return new ScheduledPod(id, status, vmId, nodeName);
+    }
+}
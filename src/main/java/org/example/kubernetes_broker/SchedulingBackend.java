@@ -0,0 +1,81 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.core.GuestEntity;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * The scheduler that {@link Live_Kubernetes_Broker_Ex} delegates placement decisions to. Guests are
+ * presented as Kubernetes nodes and cloudlets as pods.
+ * <p>
+ * Decisions are handed to the broker through a {@link ScheduledPod} consumer as soon as they are known, so
+ * an implementation may stream them. Implementations are called from the CloudSim event loop only.
+ * <p>
+ * The {@code Async} variants let the event loop carry on while the scheduler works. They return the
+ * decisions once all of them are known, and fail the future if the request failed. By default they run
+ * the blocking call and return a completed future.
+ */
+public interface SchedulingBackend {
+
+    /** Replaces the scheduler's node set with {@code nodes}. Returns false if the sync failed. */
+    boolean syncAllNodes(Collection<? extends GuestEntity> nodes);
+
+    /** Adds {@code added} to and removes {@code removedIds} from the scheduler's node set. Returns false if the sync failed. */
+    boolean syncNodeDelta(Collection<? extends GuestEntity> added, Collection<Integer> removedIds);
+
+    /**
+     * Asks the scheduler to place a batch of new pods.
+     *
+     * @return the number of decisions passed to {@code onDecision}, or -1 if the request failed
+     */
+    int submitBatch(List<? extends Cloudlet> cloudlets, Consumer<ScheduledPod> onDecision);
+
+    /**
+     * Removes the pods of finished cloudlets and reports any pending pods the scheduler placed into the
+     * freed capacity.
+     *
+     * @return the number of decisions passed to {@code onDecision}, or -1 if the request failed
+     */
+    int completeAndReschedule(List<? extends Cloudlet> finished, Consumer<ScheduledPod> onDecision);
+
+    default CompletableFuture<List<ScheduledPod>> submitBatchAsync(List<? extends Cloudlet> cloudlets) {
+        List<ScheduledPod> decisions = new ArrayList<>();
+        return submitBatch(cloudlets, decisions::add) < 0
+                ? CompletableFuture.failedFuture(new IOException("Batch submission failed"))
+                : CompletableFuture.completedFuture(decisions);
+    }
+
+    default CompletableFuture<List<ScheduledPod>> completeAndRescheduleAsync(List<? extends Cloudlet> finished) {
+        List<ScheduledPod> decisions = new ArrayList<>();
+        return completeAndReschedule(finished, decisions::add) < 0
+                ? CompletableFuture.failedFuture(new IOException("Completion report failed"))
+                : CompletableFuture.completedFuture(decisions);
+    }
+
+    /**
+     * Returns the wall-clock seconds to count as the round trip of the call behind {@code decisions}, a
+     * future returned by one of the Async variants, when the caller measured {@code measuredSeconds}. Only
+     * called once the future is done. By default the measurement stands; a replay returns the round trip of
+     * the recorded run instead.
+     */
+    default double roundTripSeconds(CompletableFuture<List<ScheduledPod>> decisions, double measuredSeconds) {
+        return measuredSeconds;
+    }
+
+    /**
+     * Called from the event loop just before the broker binds the decisions of {@code decisions}, a future
+     * returned by one of the Async variants, once it is done. Lets a backend order what it does with the
+     * answer by when the simulation consumes it rather than when it arrived.
+     */
+    default void decisionsTaken(CompletableFuture<List<ScheduledPod>> decisions) {
+    }
+
+    /** Removes all pods and nodes so the scheduler can be reused for another run. */
+    void reset();
+}
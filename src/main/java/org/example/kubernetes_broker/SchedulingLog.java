@@ -0,0 +1,172 @@
+package org.example.kubernetes_broker;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * Binary format shared by {@link RecordingSchedulingBackend} and {@link ReplaySchedulingBackend}.
+ * <p>
+ * A log is an 8-byte header (magic, version) followed by one record per {@link SchedulingBackend} call, in
+ * call order; an asynchronous call is placed where the broker took its decisions. Each record starts with
+ * its type byte:
+ * <pre>
+ * FULL_NODE_SYNC                int n, n x int guestId, boolean success
+ * NODE_DELTA                    int n, n x int addedId, int m, m x int removedId, boolean success
+ * SUBMIT_BATCH                  int n, n x int cloudletId, decision*, END_OF_DECISIONS, int result
+ * COMPLETE_AND_RESCHEDULE       int n, n x int cloudletId, decision*, END_OF_DECISIONS, int result
+ * RESET
+ * ASYNC_SUBMIT_BATCH            int call, double roundTrip, then as SUBMIT_BATCH
+ * ASYNC_COMPLETE_AND_RESCHEDULE int call, double roundTrip, then as COMPLETE_AND_RESCHEDULE
+ * </pre>
+ * {@code call} numbers the asynchronous calls in the order they were sent, from 0, and {@code roundTrip} is
+ * the wall-clock seconds the call took to answer. A replay needs both before the broker takes the decisions,
+ * so it reads asynchronous records ahead of the others.
+ * A decision is a status byte, the pod id, the VM id and a node name byte. The node name is only written
+ * out when it differs from the adapter's {@code csnode-<vmId>}. Every record is flushed as soon as the
+ * call returns, so a log stays readable up to the last completed call if the run is killed.
+ */
+final class SchedulingLog {
+
+    static final int MAGIC = 0x43534C47; // "CSLG"
+    static final int VERSION = 2;
+
+    static final byte FULL_NODE_SYNC = 1;
+    static final byte NODE_DELTA = 2;
+    static final byte SUBMIT_BATCH = 3;
+    static final byte COMPLETE_AND_RESCHEDULE = 4;
+    static final byte RESET = 5;
+    static final byte ASYNC_SUBMIT_BATCH = 6;
+    static final byte ASYNC_COMPLETE_AND_RESCHEDULE = 7;
+
+    static final byte END_OF_DECISIONS = -1;
+
+    private static final byte STATUS_SCHEDULED = 0;
+    private static final byte STATUS_UNSCHEDULABLE = 1;
+    private static final byte STATUS_UNKNOWN = 2;
+    private static final byte STATUS_NULL = 3;
+    private static final byte STATUS_OTHER = 4;
+
+    private static final byte NODE_NAME_NULL = 0;
+    private static final byte NODE_NAME_CANONICAL = 1;
+    private static final byte NODE_NAME_EXPLICIT = 2;
+
+    private SchedulingLog() {
+    }
+
+    static void writeDecision(DataOutput out, ScheduledPod pod) throws IOException {
+        String status = pod.status();
+        byte statusCode = status == null ? STATUS_NULL
+                : switch (status) {
+                    case "Scheduled" -> STATUS_SCHEDULED;
+                    case "Unschedulable" -> STATUS_UNSCHEDULABLE;
+                    case "Unknown" -> STATUS_UNKNOWN;
+                    default -> STATUS_OTHER;
+                };
+        out.writeByte(statusCode);
+        if (statusCode == STATUS_OTHER) {
+            out.writeUTF(status);
+        }
+        out.writeInt(pod.id());
+        out.writeInt(pod.vmId());
+
+        String nodeName = pod.nodeName();
+        if (nodeName == null) {
+            out.writeByte(NODE_NAME_NULL);
+        } else if (nodeName.equals("csnode-" + pod.vmId())) {
+            out.writeByte(NODE_NAME_CANONICAL);
+        } else {
+            out.writeByte(NODE_NAME_EXPLICIT);
+            out.writeUTF(nodeName);
+        }
+    }
+
+    /** Reads the rest of a decision whose status byte has already been read. */
+    static ScheduledPod readDecision(DataInput in, byte statusCode) throws IOException {
+        String status = switch (statusCode) {
+            case STATUS_SCHEDULED -> "Scheduled";
+            case STATUS_UNSCHEDULABLE -> "Unschedulable";
+            case STATUS_UNKNOWN -> "Unknown";
+            case STATUS_NULL -> null;
+            case STATUS_OTHER -> in.readUTF();
+            default -> throw new IOException("Corrupt scheduling log: unknown status " + statusCode);
+        };
+        int id = in.readInt();
+        int vmId = in.readInt();
+
+        byte nodeNameKind = in.readByte();
+        String nodeName = switch (nodeNameKind) {
+            case NODE_NAME_NULL -> null;
+            case NODE_NAME_CANONICAL -> "csnode-" + vmId;
+            case NODE_NAME_EXPLICIT -> in.readUTF();
+            default -> throw new IOException("Corrupt scheduling log: unknown node name kind " + nodeNameKind);
+        };
+        return new ScheduledPod(id, status, vmId, nodeName);
+    }
+
+    /** Returns the record type of an asynchronous call of {@code type}, SUBMIT_BATCH or COMPLETE_AND_RESCHEDULE. */
+    static byte asyncType(byte type) {
+        return type == SUBMIT_BATCH ? ASYNC_SUBMIT_BATCH : ASYNC_COMPLETE_AND_RESCHEDULE;
+    }
+
+    static boolean isAsync(byte type) {
+        return type == ASYNC_SUBMIT_BATCH || type == ASYNC_COMPLETE_AND_RESCHEDULE;
+    }
+
+    /** Reads past the rest of a record whose type byte has already been read. */
+    static void skipRecord(DataInput in, byte type) throws IOException {
+        switch (type) {
+            case FULL_NODE_SYNC -> {
+                skipInts(in);
+                in.readBoolean();
+            }
+            case NODE_DELTA -> {
+                skipInts(in);
+                skipInts(in);
+                in.readBoolean();
+            }
+            case SUBMIT_BATCH, COMPLETE_AND_RESCHEDULE -> {
+                skipInts(in);
+                skipDecisions(in);
+            }
+            case RESET -> {
+            }
+            case ASYNC_SUBMIT_BATCH, ASYNC_COMPLETE_AND_RESCHEDULE -> {
+                in.readInt();
+                in.readDouble();
+                skipInts(in);
+                skipDecisions(in);
+            }
+            default -> throw new IOException("Corrupt scheduling log: unknown record " + type);
+        }
+    }
+
+    private static void skipInts(DataInput in) throws IOException {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            in.readInt();
+        }
+    }
+
+    /** Reads past a call's decisions, its END_OF_DECISIONS marker and its result. */
+    private static void skipDecisions(DataInput in) throws IOException {
+        byte status;
+        while ((status = in.readByte()) != END_OF_DECISIONS) {
+            readDecision(in, status);
+        }
+        in.readInt();
+    }
+
+    static String recordName(byte type) {
+        return switch (type) {
+            case FULL_NODE_SYNC -> "full node sync";
+            case NODE_DELTA -> "node delta";
+            case SUBMIT_BATCH -> "batch submission";
+            case COMPLETE_AND_RESCHEDULE -> "completion";
+            case RESET -> "reset";
+            case ASYNC_SUBMIT_BATCH -> "asynchronous batch submission";
+            case ASYNC_COMPLETE_AND_RESCHEDULE -> "asynchronous completion";
+            default -> "unknown record " + type;
+        };
+    }
+}
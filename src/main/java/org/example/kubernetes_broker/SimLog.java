@@ -0,0 +1,134 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Log;
+
+import java.util.function.Supplier;
+
+/**
+ * Logging facade for the datacenter and broker hot paths. Every call checks the level and the sink before
+ * doing any work, and the {@link Supplier} overloads only build their message when it will be written, so
+ * disabled logging costs a couple of field reads. Messages that take several values to build should be
+ * guarded with {@link #isDebugEnabled()} or passed as a supplier rather than concatenated at the call site.
+ * <p>
+ * Lines go to CloudSim's {@link Log} by default, and are dropped whenever {@link Log#isDisabled()}. A run
+ * that wants traces without the console can install an {@link AsyncFileLogSink} with {@link #setSink}.
+ */
+public final class SimLog {
+
+    /** DEBUG is the per-host and per-pod detail; INFO is one line per event; ERROR is always worth printing. */
+    public enum Level {
+        ERROR, INFO, DEBUG
+    }
+
+    /** Destination for log lines. It is called from the simulation thread. */
+    public interface Sink {
+        boolean isEnabled();
+
+        void writeLine(String line);
+
+        /** Writes {@code text} without ending the line, so the next write continues it. */
+        void write(String text);
+    }
+
+    /** Writes to CloudSim's {@link Log}, honouring {@link Log#disable()}. */
+    public static final Sink CLOUDSIM_LOG = new Sink() {
+        @Override
+        public boolean isEnabled() {
+            return !Log.isDisabled();
+        }
+
+        @Override
+        public void writeLine(String line) {
+            Log.println(line);
+        }
+
+        @Override
+        public void write(String text) {
+            Log.print(text);
+        }
+    };
+
+    private static volatile Sink sink = CLOUDSIM_LOG;
+    private static volatile Level level = Level.DEBUG;
+
+    private SimLog() {
+    }
+
+    public static Sink getSink() {
+        return sink;
+    }
+
+    /** Sets where lines are written. Null restores {@link #CLOUDSIM_LOG}. */
+    public static void setSink(Sink newSink) {
+        sink = newSink != null ? newSink : CLOUDSIM_LOG;
+    }
+
+    public static Level getLevel() {
+        return level;
+    }
+
+    /** Sets the most detailed level that is written. */
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) <= 0 && sink.isEnabled();
+    }
+
+    public static boolean isInfoEnabled() {
+        return isEnabled(Level.INFO);
+    }
+
+    public static boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+
+    public static void error(String message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void error(Supplier<String> message) {
+        log(Level.ERROR, message);
+    }
+
+    public static void info(String message) {
+        log(Level.INFO, message);
+    }
+
+    public static void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+
+    public static void debug(String message) {
+        log(Level.DEBUG, message);
+    }
+
+    public static void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+
+    /** Like {@link #debug(Supplier)}, but does not end the line. */
+    public static void debugPrint(Supplier<String> text) {
+        print(Level.DEBUG, text);
+    }
+
+    public static void log(Level messageLevel, String message) {
+        if (isEnabled(messageLevel)) {
+            sink.writeLine(message);
+        }
+    }
+
+    public static void log(Level messageLevel, Supplier<String> message) {
+        if (isEnabled(messageLevel)) {
+            sink.writeLine(message.get());
+        }
+    }
+
+    /** Writes {@code text} without ending the line, as {@link Log#print} does. */
+    public static void print(Level messageLevel, Supplier<String> text) {
+        if (isEnabled(messageLevel)) {
+            sink.write(text.get());
+        }
+    }
+}
@@ -0,0 +1,466 @@
+package org.example.kubernetes_broker;
+
+import org.cloudbus.cloudsim.Cloudlet;
+import org.cloudbus.cloudsim.VmAllocationPolicy;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.core.CloudSimTags;
+import org.cloudbus.cloudsim.core.GuestEntity;
+import org.cloudbus.cloudsim.core.HostEntity;
+import org.cloudbus.cloudsim.core.SimEvent;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Snapshot of a running simulation of one {@link PowerDatacenterCustom} and one
+ * {@link Live_Kubernetes_Broker_Ex}, taken with {@link PowerDatacenterCustom#checkpointAt} and written as a
+ * gzipped binary file.
+ * <p>
+ * It holds the datacenter's energy, migration count, metric registry, every VM id ever allocated and
+ * the host of each VM; the broker's pending, running, paused and finished cloudlets, its cloudlet outcome
+ * distributions ({@link org.example.metrics.CloudletMetrics}) and fragmentation record; and the events the
+ * two entities had scheduled but not yet received. Cloudlets and guests are stored by id, so a checkpoint is
+ * restored into a simulation built the same way as the one it was taken from, with the same entities
+ * created in the same order and the same guests and cloudlets submitted:
+ * <pre>
+ * SimulationCheckpoint checkpoint = SimulationCheckpoint.read(file);
+ * // build the datacenter and broker, submit the guests and cloudlets, then:
+ * checkpoint.restore(datacenter, broker);
+ * CloudSim.startSimulation();
+ * </pre>
+ * Taking a checkpoint does not change the run: it is taken at the first datacenter update at or after the
+ * requested time, once the events CloudSim had already moved to its deferred queue for that time have been
+ * handled, so the energy and cloudlet progress are current without an extra update.
+ * <p>
+ * The clock jumps to the checkpoint time, where the VMs are placed back on their hosts, the pending events
+ * are re-sent and every unfinished cloudlet is handed to the (reset) scheduler again, running ones with the
+ * length per PE they had left. Paused cloudlets go back, still paused, to the VM they were paused on; the
+ * scheduler is not told about them. A checkpoint is never modified by a restore, so several what-if runs
+ * can be forked from one file by restoring it into differently configured simulations one after the other.
+ * <p>
+ * Not captured: the cloudlet schedulers' internal state (a running cloudlet restarts from its remaining
+ * length and may be placed on another VM), the hosts' utilisation history used by the migration policies,
+ * the results of finished cloudlets other than their status, and the scheduling throughput and control
+ * plane latency figures ({@link org.example.metrics.SchedulerMetrics},
+ * {@link org.example.metrics.ControlPlaneMetrics}), which only cover the run they were recorded in.
+ */
+public final class SimulationCheckpoint {
+
+    static final int MAGIC = 0x43534350; // "CSCP"
+    static final int VERSION = 5;
+
+    // Kinds of event data that can be stored
+    private static final byte DATA_NONE = 0;
+    private static final byte DATA_INTEGER = 1;
+    private static final byte DATA_INTS = 2;
+    private static final byte DATA_CLOUDLET = 3;
+    private static final byte DATA_GUEST = 4;
+    private static final byte DATA_MIGRATION = 5;
+
+    record PendingEvent(double time, int source, int destination, CloudSimTags tag, byte dataKind, int[] data) {
+    }
+
+    double clock;
+    int datacenterId;
+    int brokerId;
+
+    double power;
+    int migrationCount;
+    // The datacenter's metric registry and consolidation distribution, as written by their writeTo
+    byte[] metrics = new byte[0];
+    // The broker's cloudlet outcome distributions and fragmentation record, as written by their writeTo
+    byte[] brokerMetrics = new byte[0];
+    int[] vmIdsEverAllocated = new int[0];
+    int[] placedGuestIds = new int[0];
+    int[] placedHostIds = new int[0];
+
+    int[] pendingCloudletIds = new int[0];
+    int[] runningCloudletIds = new int[0];
+    // Remaining lengths are per PE, as Cloudlet.setCloudletLength takes them
+    long[] remainingLengths = new long[0];
+    int[] pausedCloudletIds = new int[0];
+    int[] pausedGuestIds = new int[0];
+    long[] pausedLengths = new long[0];
+    int[] receivedCloudletIds = new int[0];
+    byte[] receivedStatuses = new byte[0];
+    // Cloudlets submitted to the datacenter that are neither running nor returned, e.g. in a pending event
+    int submittedInFlight;
+
+    final List<PendingEvent> events = new ArrayList<>();
+
+    SimulationCheckpoint() {
+    }
+
+    /** Simulated time the checkpoint was taken at. */
+    public double getClock() {
+        return clock;
+    }
+
+    /**
+     * Captures the current state, or returns null if the broker is waiting for scheduling decisions or
+     * holding back cloudlet returns, or an event carries data that cannot be stored. The datacenter must have
+     * been updated at the current time. The pending events are taken off the queue to be read and put back
+     * straight away.
+     */
+    static SimulationCheckpoint capture(PowerDatacenterCustom datacenter, Live_Kubernetes_Broker_Ex broker) {
+        if (!broker.canCheckpoint()) return null;
+
+        SimulationCheckpoint checkpoint = new SimulationCheckpoint();
+        checkpoint.clock = CloudSim.clock();
+        checkpoint.datacenterId = datacenter.getId();
+        checkpoint.brokerId = broker.getId();
+        if (!checkpoint.captureEvents(datacenter.getId(), broker.getId())) return null;
+        datacenter.captureCheckpoint(checkpoint);
+        broker.captureCheckpoint(checkpoint);
+        return checkpoint;
+    }
+
+    /**
+     * Returns a description of the first difference between the pending events of this checkpoint and of
+     * {@code other}, in any order, or null if they hold the same events.
+     */
+    String comparePendingEvents(SimulationCheckpoint other) {
+        if (events.size() != other.events.size()) {
+            return events.size() + " pending event(s) instead of " + other.events.size();
+        }
+        List<PendingEvent> mine = sortedEvents();
+        List<PendingEvent> theirs = other.sortedEvents();
+        for (int i = 0; i < mine.size(); i++) {
+            PendingEvent a = mine.get(i);
+            PendingEvent b = theirs.get(i);
+            // Re-sending at (time - clock) can round the event time in its last bits
+            if (EVENT_KEY.compare(a, b) != 0 || Math.abs(a.time() - b.time()) > TIME_TOLERANCE) {
+                return "pending " + describe(a) + " where the checkpoint has " + describe(b);
+            }
+        }
+        return null;
+    }
+
+    private static final double TIME_TOLERANCE = 1e-9;
+
+    private static final Comparator<PendingEvent> EVENT_KEY = Comparator.comparingInt(PendingEvent::source)
+            .thenComparingInt(PendingEvent::destination)
+            .thenComparing(pending -> pending.tag().toString())
+            .thenComparingInt(PendingEvent::dataKind)
+            .thenComparing(PendingEvent::data, Arrays::compare);
+
+    // Time last, so events that only differ by rounding in their time still line up
+    private static final Comparator<PendingEvent> EVENT_ORDER = EVENT_KEY.thenComparingDouble(PendingEvent::time);
+
+    private List<PendingEvent> sortedEvents() {
+        List<PendingEvent> sorted = new ArrayList<>(events);
+        sorted.sort(EVENT_ORDER);
+        return sorted;
+    }
+
+    private static String describe(PendingEvent pending) {
+        return pending.tag() + " at " + pending.time() + " from #" + pending.source() + " to #" + pending.destination()
+                + " with " + Arrays.toString(pending.data());
+    }
+
+    /**
+     * Drains the events {@code sources} have scheduled from the future queue, records them and puts them back.
+     * Returns false if one of them carries data that cannot be stored.
+     */
+    boolean captureEvents(int... sources) {
+        List<SimEvent> drained = new ArrayList<>();
+        for (int source : sources) {
+            SimEvent ev;
+            // cancel returns the last event it looked at when nothing matched, so check the source too
+            while ((ev = CloudSim.cancel(source, CloudSim.SIM_ANY)) != null && ev.getSource() == source) {
+                drained.add(ev);
+            }
+        }
+        drained.sort(Comparator.comparingDouble(SimEvent::eventTime));
+
+        boolean complete = true;
+        for (SimEvent ev : drained) {
+            CloudSim.send(ev.getSource(), ev.getDestination(), ev.eventTime() - clock, ev.getTag(), ev.getData());
+            // Checkpoints are requested per run, they do not carry over
+            if (ev.getTag() == CloudActionTagsEx.CHECKPOINT) continue;
+            PendingEvent pending = encode(ev);
+            if (pending == null) {
+                SimLog.info(() -> CloudSim.clock() + ": Cannot checkpoint a pending " + ev.getTag() + " event carrying "
+                        + ev.getData().getClass().getSimpleName());
+                complete = false;
+            } else {
+                events.add(pending);
+            }
+        }
+        return complete;
+    }
+
+    private static PendingEvent encode(SimEvent ev) {
+        if (!(ev.getTag() instanceof Enum)) return null;
+        Object data = ev.getData();
+        byte kind;
+        int[] ints;
+        if (data == null) {
+            kind = DATA_NONE;
+            ints = new int[0];
+        } else if (data instanceof Integer value) {
+            kind = DATA_INTEGER;
+            ints = new int[]{value};
+        } else if (data instanceof int[] values) {
+            kind = DATA_INTS;
+            ints = values.clone();
+        } else if (data instanceof Cloudlet cloudlet) {
+            kind = DATA_CLOUDLET;
+            ints = new int[]{cloudlet.getCloudletId(), cloudlet.getGuestId()};
+        } else if (data instanceof VmAllocationPolicy.GuestMapping migration) {
+            kind = DATA_MIGRATION;
+            ints = new int[]{migration.vm().getId(), migration.host().getId()};
+        } else if (data instanceof GuestEntity guest) {
+            kind = DATA_GUEST;
+            ints = new int[]{guest.getId()};
+        } else {
+            return null;
+        }
+        return new PendingEvent(ev.eventTime(), ev.getSource(), ev.getDestination(), ev.getTag(), kind, ints);
+    }
+
+    /**
+     * Re-sends the pending events of a restored simulation, resolving their data against its cloudlets,
+     * guests and hosts. Events whose cloudlet or guest no longer exists are dropped.
+     */
+    void resendEvents(PowerDatacenterCustom datacenter, IntObjectHashMap<Cloudlet> cloudlets,
+                      IntObjectHashMap<GuestEntity> guests) {
+        for (PendingEvent pending : events) {
+            Object data;
+            switch (pending.dataKind()) {
+                case DATA_INTEGER -> data = pending.data()[0];
+                case DATA_INTS -> data = pending.data().clone();
+                case DATA_CLOUDLET -> {
+                    Cloudlet cloudlet = cloudlets.get(pending.data()[0]);
+                    if (cloudlet != null) {
+                        cloudlet.setGuestId(pending.data()[1]);
+                    }
+                    data = cloudlet;
+                }
+                case DATA_GUEST -> data = guests.get(pending.data()[0]);
+                case DATA_MIGRATION -> {
+                    GuestEntity guest = guests.get(pending.data()[0]);
+                    HostEntity target = datacenter.getHostById(pending.data()[1]);
+                    if (guest != null && target != null) {
+                        target.addMigratingInGuest(guest);
+                        data = new VmAllocationPolicy.GuestMapping(guest, target);
+                    } else {
+                        data = null;
+                    }
+                }
+                default -> data = null;
+            }
+            if (data == null && pending.dataKind() != DATA_NONE) {
+                SimLog.error(() -> CloudSim.clock() + ": Dropped a restored " + pending.tag()
+                        + " event whose cloudlet, guest or host does not exist");
+                continue;
+            }
+            CloudSim.send(pending.source(), pending.destination(), Math.max(pending.time() - clock, 0),
+                    pending.tag(), data);
+        }
+    }
+
+    interface StateWriter {
+        void writeTo(DataOutput out) throws IOException;
+    }
+
+    interface StateReader {
+        void readFrom(DataInput in) throws IOException;
+    }
+
+    static byte[] toBytes(StateWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.writeTo(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // not thrown by an in-memory stream
+        }
+        return bytes.toByteArray();
+    }
+
+    static void restoreMetrics(byte[] state, StateReader reader) {
+        try {
+            reader.readFrom(new DataInputStream(new ByteArrayInputStream(state)));
+        } catch (IOException e) {
+            SimLog.error(() -> CloudSim.clock() + ": Could not restore the checkpointed metrics: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restores this checkpoint into a freshly built simulation, see the class comment. Must be called before
+     * the simulation starts.
+     *
+     * @throws IllegalArgumentException if the entities' ids differ from the checkpointed ones, i.e. the
+     *                                  simulation was not built in the same order
+     */
+    public void restore(PowerDatacenterCustom datacenter, Live_Kubernetes_Broker_Ex broker) {
+        if (datacenter.getId() != datacenterId || broker.getId() != brokerId) {
+            throw new IllegalArgumentException("Checkpoint was taken with datacenter #" + datacenterId + " and broker #"
+                    + brokerId + ", not #" + datacenter.getId() + " and #" + broker.getId());
+        }
+        datacenter.restoreFrom(this, broker);
+        broker.restoreFrom(this);
+    }
+
+    /**
+     * Writes the checkpoint to {@code file}, replacing it only once the new snapshot is complete. Returns
+     * false if it could not be written.
+     */
+    public boolean write(Path file) {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(Files.newOutputStream(partial))))) {
+                writeTo(out);
+            }
+            Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            SimLog.error(() -> CloudSim.clock() + ": Could not write checkpoint " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    public static SimulationCheckpoint read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(Files.newInputStream(file))))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException(file + " is not a version " + VERSION + " simulation checkpoint");
+            }
+            SimulationCheckpoint checkpoint = new SimulationCheckpoint();
+            checkpoint.readFrom(in);
+            return checkpoint;
+        }
+    }
+
+    private void writeTo(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeDouble(clock);
+        out.writeInt(datacenterId);
+        out.writeInt(brokerId);
+
+        out.writeDouble(power);
+        out.writeInt(migrationCount);
+        out.writeInt(metrics.length);
+        out.write(metrics);
+        out.writeInt(brokerMetrics.length);
+        out.write(brokerMetrics);
+        writeInts(out, vmIdsEverAllocated);
+        writeInts(out, placedGuestIds);
+        writeInts(out, placedHostIds);
+
+        writeInts(out, pendingCloudletIds);
+        writeInts(out, runningCloudletIds);
+        for (long length : remainingLengths) {
+            out.writeLong(length);
+        }
+        writeInts(out, pausedCloudletIds);
+        writeInts(out, pausedGuestIds);
+        for (long length : pausedLengths) {
+            out.writeLong(length);
+        }
+        writeInts(out, receivedCloudletIds);
+        out.write(receivedStatuses);
+        out.writeInt(submittedInFlight);
+
+        out.writeInt(events.size());
+        for (PendingEvent pending : events) {
+            out.writeDouble(pending.time());
+            out.writeInt(pending.source());
+            out.writeInt(pending.destination());
+            out.writeUTF(pending.tag().getClass().getName());
+            out.writeUTF(((Enum<?>) pending.tag()).name());
+            out.writeByte(pending.dataKind());
+            writeInts(out, pending.data());
+        }
+    }
+
+    private void readFrom(DataInput in) throws IOException {
+        clock = in.readDouble();
+        datacenterId = in.readInt();
+        brokerId = in.readInt();
+
+        power = in.readDouble();
+        migrationCount = in.readInt();
+        metrics = new byte[in.readInt()];
+        in.readFully(metrics);
+        brokerMetrics = new byte[in.readInt()];
+        in.readFully(brokerMetrics);
+        vmIdsEverAllocated = readInts(in);
+        placedGuestIds = readInts(in);
+        placedHostIds = readInts(in);
+
+        pendingCloudletIds = readInts(in);
+        runningCloudletIds = readInts(in);
+        remainingLengths = new long[runningCloudletIds.length];
+        for (int i = 0; i < remainingLengths.length; i++) {
+            remainingLengths[i] = in.readLong();
+        }
+        pausedCloudletIds = readInts(in);
+        pausedGuestIds = readInts(in);
+        pausedLengths = new long[pausedCloudletIds.length];
+        for (int i = 0; i < pausedLengths.length; i++) {
+            pausedLengths[i] = in.readLong();
+        }
+        receivedCloudletIds = readInts(in);
+        receivedStatuses = new byte[receivedCloudletIds.length];
+        in.readFully(receivedStatuses);
+        submittedInFlight = in.readInt();
+
+        int eventCount = in.readInt();
+        for (int i = 0; i < eventCount; i++) {
+            double time = in.readDouble();
+            int source = in.readInt();
+            int destination = in.readInt();
+            CloudSimTags tag = readTag(in.readUTF(), in.readUTF());
+            byte dataKind = in.readByte();
+            events.add(new PendingEvent(time, source, destination, tag, dataKind, readInts(in)));
+        }
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private static CloudSimTags readTag(String className, String name) throws IOException {
+        try {
+            Class<?> tagClass = Class.forName(className);
+            if (!tagClass.isEnum() || !CloudSimTags.class.isAssignableFrom(tagClass)) {
+                throw new IOException("Corrupt checkpoint: " + className + " is not a tag enum");
+            }
+            return (CloudSimTags) Enum.valueOf((Class<? extends Enum>) tagClass, name);
+        } catch (ClassNotFoundException | IllegalArgumentException e) {
+            throw new IOException("Corrupt checkpoint: unknown event tag " + className + "." + name, e);
+        }
+    }
+
+    private static void writeInts(DataOutput out, int[] values) throws IOException {
+        out.writeInt(values.length);
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInput in) throws IOException {
+        int[] values = new int[in.readInt()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+}
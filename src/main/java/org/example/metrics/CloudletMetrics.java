@@ -0,0 +1,97 @@
+package org.example.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Process-wide distributions of finished cloudlets: the wait from submission to the control plane until
+ * the cloudlet started running, its execution time, and its bounded slowdown. Each is a {@link Histogram},
+ * so memory stays fixed however many cloudlets finish and every quantile is within about 3%. Times are
+ * recorded in microseconds of simulated time and slowdowns in thousandths. The first broker to start a
+ * simulation clears them, as it does {@link SchedulerMetrics}, {@link FragmentationMetrics} and
+ * {@link ControlPlaneMetrics}.
+ */
+public final class CloudletMetrics {
+    /** Execution times shorter than this count as this long in the slowdown, so tiny cloudlets do not dominate it. */
+    public static final double SLOWDOWN_MIN_EXEC_TIME = 10.0;
+
+    private static final double MICROS = 1e6;
+    private static final double THOUSANDTHS = 1e3;
+
+    private static final Histogram WAIT_MICROS = new Histogram();
+    private static final Histogram EXEC_MICROS = new Histogram();
+    private static final Histogram SLOWDOWN_THOUSANDTHS = new Histogram();
+
+    private CloudletMetrics() {
+    }
+
+    /** Records one finished cloudlet's wait and execution time, in simulated seconds. */
+    public static void record(double waitTime, double execTime) {
+        waitTime = Math.max(waitTime, 0);
+        execTime = Math.max(execTime, 0);
+        double slowdown = Math.max((waitTime + execTime) / Math.max(execTime, SLOWDOWN_MIN_EXEC_TIME), 1);
+        WAIT_MICROS.record(Math.round(waitTime * MICROS));
+        EXEC_MICROS.record(Math.round(execTime * MICROS));
+        SLOWDOWN_THOUSANDTHS.record(Math.round(slowdown * THOUSANDTHS));
+    }
+
+    public static long getCount() {
+        return WAIT_MICROS.getCount();
+    }
+
+    public static boolean hasSamples() {
+        return getCount() > 0;
+    }
+
+    /** Wait at quantile {@code q} (0..1), in simulated seconds. */
+    public static double getWaitTime(double q) {
+        return WAIT_MICROS.getPercentile(q) / MICROS;
+    }
+
+    /** Execution time at quantile {@code q} (0..1), in simulated seconds. */
+    public static double getExecutionTime(double q) {
+        return EXEC_MICROS.getPercentile(q) / MICROS;
+    }
+
+    /** Bounded slowdown at quantile {@code q} (0..1). */
+    public static double getSlowdown(double q) {
+        return SLOWDOWN_THOUSANDTHS.getPercentile(q) / THOUSANDTHS;
+    }
+
+    /** Clears every distribution, e.g. between runs in the same JVM. */
+    public static void reset() {
+        WAIT_MICROS.reset();
+        EXEC_MICROS.reset();
+        SLOWDOWN_THOUSANDTHS.reset();
+    }
+
+    /** Writes every distribution, so {@link #readFrom} can restore them, e.g. into a run forked from a checkpoint. */
+    public static void writeTo(DataOutput out) throws IOException {
+        WAIT_MICROS.writeTo(out);
+        EXEC_MICROS.writeTo(out);
+        SLOWDOWN_THOUSANDTHS.writeTo(out);
+    }
+
+    /** Replaces every distribution with the one written by {@link #writeTo}. */
+    public static void readFrom(DataInput in) throws IOException {
+        WAIT_MICROS.readFrom(in);
+        EXEC_MICROS.readFrom(in);
+        SLOWDOWN_THOUSANDTHS.readFrom(in);
+    }
+
+    public static void printSummary(PrintStream out) {
+        out.printf(Locale.ROOT, "Cloudlet outcomes (%d cloudlets; p50 / p90 / p99 / p99.9 / max):%n", getCount());
+        print(out, "wait (s)", WAIT_MICROS, MICROS);
+        print(out, "execution (s)", EXEC_MICROS, MICROS);
+        print(out, "slowdown", SLOWDOWN_THOUSANDTHS, THOUSANDTHS);
+    }
+
+    private static void print(PrintStream out, String label, Histogram h, double scale) {
+        out.printf(Locale.ROOT, "  %-16s %.3f / %.3f / %.3f / %.3f / %.3f%n", label,
+                h.getPercentile(0.5) / scale, h.getPercentile(0.9) / scale, h.getPercentile(0.99) / scale,
+                h.getPercentile(0.999) / scale, h.getMax() / scale);
+    }
+}
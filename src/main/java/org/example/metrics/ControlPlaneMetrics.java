@@ -0,0 +1,93 @@
+package org.example.metrics;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Process-wide record of broker to control plane traffic, one {@link EndpointLatency} per endpoint. The
+ * HTTP scheduling backend records into it, so {@link SimulationMetrics} can report it without being
+ * handed the broker.
+ */
+public final class ControlPlaneMetrics {
+    private static final Map<String, EndpointLatency> ENDPOINTS = new LinkedHashMap<>();
+
+    private ControlPlaneMetrics() {
+    }
+
+    /** Returns the metrics for {@code endpoint}, creating them on first use. */
+    public static synchronized EndpointLatency endpoint(String endpoint) {
+        return ENDPOINTS.computeIfAbsent(endpoint, EndpointLatency::new);
+    }
+
+    public static synchronized List<EndpointLatency> getEndpoints() {
+        return new ArrayList<>(ENDPOINTS.values());
+    }
+
+    public static boolean hasSamples() {
+        for (EndpointLatency endpoint : getEndpoints()) {
+            if (endpoint.getRequests() > 0 || endpoint.getFailures() > 0) return true;
+        }
+        return false;
+    }
+
+    /** Clears every endpoint's samples, e.g. between runs in the same JVM. */
+    public static void reset() {
+        for (EndpointLatency endpoint : getEndpoints()) {
+            endpoint.reset();
+        }
+    }
+
+    public static void printSummary(PrintStream out) {
+        out.println("Control plane latency (ms: p50 / p99 / max):");
+        for (EndpointLatency e : getEndpoints()) {
+            if (e.getRequests() == 0 && e.getFailures() == 0) continue;
+            out.printf(Locale.ROOT, "  %-20s requests=%d failures=%d%n", e.getEndpoint(), e.getRequests(), e.getFailures());
+            printLatency(out, "serialization", e.getSerializationNanos());
+            printLatency(out, "network+server", e.getNetworkNanos());
+            printLatency(out, "deserialization", e.getDeserializationNanos());
+            out.printf(Locale.ROOT, "    %-16s avg %.0f / p99 %d / max %d bytes%n", "request",
+                    e.getRequestBytes().getMean(), e.getRequestBytes().getPercentile(0.99), e.getRequestBytes().getMax());
+            out.printf(Locale.ROOT, "    %-16s avg %.0f / p99 %d / max %d bytes%n", "response",
+                    e.getResponseBytes().getMean(), e.getResponseBytes().getPercentile(0.99), e.getResponseBytes().getMax());
+            out.printf(Locale.ROOT, "    %-16s avg %.1f / p99 %d / max %d%n", "batch size",
+                    e.getBatchSize().getMean(), e.getBatchSize().getPercentile(0.99), e.getBatchSize().getMax());
+        }
+    }
+
+    private static void printLatency(PrintStream out, String label, Histogram nanos) {
+        out.printf(Locale.ROOT, "    %-16s %.3f / %.3f / %.3f (total %.1f)%n", label,
+                nanos.getPercentile(0.5) / 1e6, nanos.getPercentile(0.99) / 1e6, nanos.getMax() / 1e6, nanos.getSum() / 1e6);
+    }
+
+    /**
+     * Writes one row per endpoint and measure: endpoint, measure, unit, count, failures, min, mean, p50,
+     * p90, p99, max, sum.
+     */
+    public static void writeCsv(Path file) throws IOException {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file))) {
+            out.println("endpoint,measure,unit,count,failures,min,mean,p50,p90,p99,max,sum");
+            for (EndpointLatency e : getEndpoints()) {
+                writeCsvRow(out, e, "serialization", "ns", e.getSerializationNanos());
+                writeCsvRow(out, e, "network", "ns", e.getNetworkNanos());
+                writeCsvRow(out, e, "deserialization", "ns", e.getDeserializationNanos());
+                writeCsvRow(out, e, "request_size", "bytes", e.getRequestBytes());
+                writeCsvRow(out, e, "response_size", "bytes", e.getResponseBytes());
+                writeCsvRow(out, e, "batch_size", "items", e.getBatchSize());
+            }
+        }
+    }
+
+    private static void writeCsvRow(PrintWriter out, EndpointLatency e, String measure, String unit, Histogram h) {
+        out.printf(Locale.ROOT, "%s,%s,%s,%d,%d,%d,%.1f,%d,%d,%d,%d,%.0f%n", e.getEndpoint(), measure, unit,
+                h.getCount(), e.getFailures(), h.getMin(), h.getMean(), h.getPercentile(0.5), h.getPercentile(0.9),
+                h.getPercentile(0.99), h.getMax(), h.getSum());
+    }
+}
@@ -0,0 +1,82 @@
+package org.example.metrics;
+
+/**
+ * Latency, payload and batch size distributions for one control plane endpoint. A request's time is split
+ * into serialization, network (the HTTP round trip until response headers arrive, including the server's
+ * work) and deserialization (reading and parsing the response body).
+ */
+public final class EndpointLatency {
+    private final String endpoint;
+    private final Histogram serializationNanos = new Histogram();
+    private final Histogram networkNanos = new Histogram();
+    private final Histogram deserializationNanos = new Histogram();
+    private final Histogram requestBytes = new Histogram();
+    private final Histogram responseBytes = new Histogram();
+    private final Histogram batchSize = new Histogram();
+    private long failures = 0;
+
+    EndpointLatency(String endpoint) {
+        this.endpoint = endpoint;
+    }
+
+    /** Records one successful request. {@code batchSize} is the number of cloudlets or nodes sent. */
+    public void record(long serializationNanos, long networkNanos, long deserializationNanos,
+                       long requestBytes, long responseBytes, int batchSize) {
+        this.serializationNanos.record(serializationNanos);
+        this.networkNanos.record(networkNanos);
+        this.deserializationNanos.record(deserializationNanos);
+        this.requestBytes.record(requestBytes);
+        this.responseBytes.record(responseBytes);
+        this.batchSize.record(batchSize);
+    }
+
+    public synchronized void recordFailure() {
+        failures++;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public long getRequests() {
+        return networkNanos.getCount();
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public Histogram getSerializationNanos() {
+        return serializationNanos;
+    }
+
+    public Histogram getNetworkNanos() {
+        return networkNanos;
+    }
+
+    public Histogram getDeserializationNanos() {
+        return deserializationNanos;
+    }
+
+    public Histogram getRequestBytes() {
+        return requestBytes;
+    }
+
+    public Histogram getResponseBytes() {
+        return responseBytes;
+    }
+
+    public Histogram getBatchSize() {
+        return batchSize;
+    }
+
+    synchronized void reset() {
+        serializationNanos.reset();
+        networkNanos.reset();
+        deserializationNanos.reset();
+        requestBytes.reset();
+        responseBytes.reset();
+        batchSize.reset();
+        failures = 0;
+    }
+}
@@ -0,0 +1,141 @@
+package org.example.metrics;
+
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.example.kubernetes_broker.IntObjectHashMap;
+
+import java.util.Arrays;
+
+/**
+ * Host energy integrated exactly over piecewise-constant CPU utilisation.
+ * <p>
+ * Each host's utilisation change points are kept in primitive arrays, together with the power drawn from
+ * each point on and the energy used up to it. Energy over any window is then two binary searches per host,
+ * independent of how often the datacenter was updated. As in {@link PowerHost#getEnergyLinearInterpolation},
+ * a host at zero utilisation is taken to be switched off and draws no power.
+ * <p>
+ * A host's utilisation is only known at datacenter updates. When a host reports the time its next cloudlet
+ * completes, a change seen at the following update is dated back to that time, so a cloudlet's energy ends
+ * when the cloudlet does rather than at the next scheduling tick. This is exact as long as a host changes
+ * at most once between two updates, which the adaptive scheduling interval guarantees.
+ * <p>
+ * With a fixed scheduling interval the datacenter does not update a host when a cloudlet is submitted, so a
+ * submission, and any completion after the first one in an interval, is only seen at the next tick and dated
+ * there. Each such change can then be off by up to one interval, as in the datacenter's own tick-by-tick
+ * energy figure. Exact energy over arbitrary windows needs
+ * {@code PowerDatacenterCustom#setAdaptiveSchedulingInterval}.
+ * <p>
+ * Not thread-safe.
+ */
+public class EnergyAccountant {
+
+    private final IntObjectHashMap<HostTrace> traces = new IntObjectHashMap<>();
+    private int changePoints = 0;
+
+    /**
+     * Records {@code host}'s utilisation after an update at {@code time}. {@code nextEventTime} is the time
+     * the update predicted for the host's next change, or Double.MAX_VALUE if none.
+     */
+    public void hostUpdated(PowerHost host, double time, double nextEventTime) {
+        HostTrace trace = traces.get(host.getId());
+        if (trace == null) {
+            trace = new HostTrace(host);
+            traces.put(host.getId(), trace);
+        }
+        double changeTime = trace.predictedChange > trace.lastTime() && trace.predictedChange < time
+                ? trace.predictedChange
+                : time;
+        if (trace.record(changeTime, host.getUtilizationOfCpu())) {
+            changePoints++;
+        }
+        // A refresh between updates does not predict anything, so keep the last prediction
+        if (nextEventTime != Double.MAX_VALUE || time > trace.predictedChange) {
+            trace.predictedChange = nextEventTime;
+        }
+    }
+
+    /** Energy used by every host between {@code from} and {@code to}, in W*sec. */
+    public double getEnergy(double from, double to) {
+        double[] energy = new double[1];
+        traces.forEach((hostId, trace) -> energy[0] += trace.energyUntil(to) - trace.energyUntil(from));
+        return energy[0];
+    }
+
+    /** Energy used by the host with {@code hostId} between {@code from} and {@code to}, in W*sec. */
+    public double getHostEnergy(int hostId, double from, double to) {
+        HostTrace trace = traces.get(hostId);
+        return trace != null ? trace.energyUntil(to) - trace.energyUntil(from) : 0;
+    }
+
+    /** Energy used by every host up to {@code until}, in W*sec. */
+    public double getTotalEnergy(double until) {
+        return getEnergy(Double.NEGATIVE_INFINITY, until);
+    }
+
+    public int getChangePointCount() {
+        return changePoints;
+    }
+
+    /** One host's change points, in time order. Power and energy are in W and W*sec. */
+    private static final class HostTrace {
+        private final PowerHost host;
+        private double[] times = new double[16];
+        private double[] utilizations = new double[16];
+        private double[] powers = new double[16];
+        // Energy used from the first change point up to each change point
+        private double[] energies = new double[16];
+        private int size = 0;
+        double predictedChange = Double.MAX_VALUE;
+
+        HostTrace(PowerHost host) {
+            this.host = host;
+        }
+
+        double lastTime() {
+            return size > 0 ? times[size - 1] : Double.NEGATIVE_INFINITY;
+        }
+
+        /** Returns true if a new change point was added. */
+        boolean record(double time, double utilization) {
+            utilization = Math.min(Math.max(utilization, 0), 1);
+            if (size > 0) {
+                int last = size - 1;
+                if (utilizations[last] == utilization) return false;
+                if (time <= times[last]) {
+                    // Several changes at one time: only the last one lasts
+                    utilizations[last] = utilization;
+                    powers[last] = power(utilization);
+                    return false;
+                }
+            }
+            if (size == times.length) {
+                int capacity = size << 1;
+                times = Arrays.copyOf(times, capacity);
+                utilizations = Arrays.copyOf(utilizations, capacity);
+                powers = Arrays.copyOf(powers, capacity);
+                energies = Arrays.copyOf(energies, capacity);
+            }
+            times[size] = time;
+            utilizations[size] = utilization;
+            powers[size] = power(utilization);
+            energies[size] = size > 0 ? energyAt(size - 1, time) : 0;
+            size++;
+            return true;
+        }
+
+        double energyUntil(double time) {
+            int i = Arrays.binarySearch(times, 0, size, time);
+            if (i < 0) {
+                i = -i - 2; // last change point before time
+            }
+            return i < 0 ? 0 : energyAt(i, time);
+        }
+
+        private double energyAt(int i, double time) {
+            return energies[i] + powers[i] * (time - times[i]);
+        }
+
+        private double power(double utilization) {
+            return utilization == 0 ? 0 : host.getPowerModel().getPower(utilization);
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package org.example.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Record of one broker's fragmentation index: the share of its nodes' free PEs that no pending pod can use.
+ * The broker records it whenever it changes, so {@link SimulationMetrics} can report it as a time-weighted
+ * distribution without being handed the broker. Brokers schedule onto their own nodes, so each has its own
+ * record, looked up by name as {@link ControlPlaneMetrics} does endpoints.
+ */
+public final class FragmentationMetrics {
+    private static final Map<String, FragmentationMetrics> BROKERS = new LinkedHashMap<>();
+
+    private final String broker;
+    private TimeWeightedDistribution index = new TimeWeightedDistribution();
+    private long strandedPes = 0;
+    private long strandedRam = 0;
+    private long peakStrandedPes = 0;
+
+    private FragmentationMetrics(String broker) {
+        this.broker = broker;
+    }
+
+    /** Returns the record for {@code broker}, creating it on first use. */
+    public static synchronized FragmentationMetrics broker(String broker) {
+        return BROKERS.computeIfAbsent(broker, FragmentationMetrics::new);
+    }
+
+    public static synchronized List<FragmentationMetrics> getBrokers() {
+        return new ArrayList<>(BROKERS.values());
+    }
+
+    public static boolean hasSamples() {
+        for (FragmentationMetrics broker : getBrokers()) {
+            if (broker.hasIndexSamples()) return true;
+        }
+        return false;
+    }
+
+    /** Clears every broker's record, e.g. between runs in the same JVM. */
+    public static void reset() {
+        for (FragmentationMetrics broker : getBrokers()) {
+            broker.clear();
+        }
+    }
+
+    public static void printSummary(PrintStream out, double untilTime) {
+        for (FragmentationMetrics broker : getBrokers()) {
+            if (broker.hasIndexSamples()) {
+                broker.print(out, untilTime);
+            }
+        }
+    }
+
+    /** Records the index, and the stranded PEs and RAM (MB) behind it, from simulation time {@code time} on. */
+    public synchronized void record(double time, double fragmentationIndex, long strandedPes, long strandedRam) {
+        index.add(time, fragmentationIndex);
+        this.strandedPes = strandedPes;
+        this.strandedRam = strandedRam;
+        peakStrandedPes = Math.max(peakStrandedPes, strandedPes);
+    }
+
+    /** Writes this broker's record, so {@link #readFrom} can restore it, e.g. into a run forked from a checkpoint. */
+    public synchronized void writeTo(DataOutput out) throws IOException {
+        index.writeTo(out);
+        out.writeLong(strandedPes);
+        out.writeLong(strandedRam);
+        out.writeLong(peakStrandedPes);
+    }
+
+    /** Replaces this broker's record with the one written by {@link #writeTo}. */
+    public synchronized void readFrom(DataInput in) throws IOException {
+        index.readFrom(in);
+        strandedPes = in.readLong();
+        strandedRam = in.readLong();
+        peakStrandedPes = in.readLong();
+    }
+
+    public String getBroker() {
+        return broker;
+    }
+
+    public synchronized TimeWeightedDistribution getIndex() {
+        return index;
+    }
+
+    public synchronized long getStrandedPes() {
+        return strandedPes;
+    }
+
+    public synchronized long getStrandedRam() {
+        return strandedRam;
+    }
+
+    public synchronized long getPeakStrandedPes() {
+        return peakStrandedPes;
+    }
+
+    private synchronized boolean hasIndexSamples() {
+        return !Double.isNaN(index.getStartTime());
+    }
+
+    private synchronized void clear() {
+        index = new TimeWeightedDistribution();
+        strandedPes = 0;
+        strandedRam = 0;
+        peakStrandedPes = 0;
+    }
+
+    private synchronized void print(PrintStream out, double untilTime) {
+        out.printf(Locale.ROOT, "Fragmentation of %s (stranded share of free PEs): time-weighted avg %.4f, p50 %.4f / p90 %.4f / p99 %.4f / max %.4f%n",
+                broker, index.average(untilTime), index.getPercentile(0.5, untilTime), index.getPercentile(0.9, untilTime),
+                index.getPercentile(0.99, untilTime), index.getMax());
+        out.printf(Locale.ROOT, "  stranded at end: %d PEs, %d MB RAM (peak %d PEs)%n", strandedPes, strandedRam, peakStrandedPes);
+    }
+}
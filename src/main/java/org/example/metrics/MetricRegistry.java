@@ -0,0 +1,299 @@
+package org.example.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Named metric series, stored column-wise in primitive arrays so that thousands of them (per host, per VM)
+ * cost a few array slots each and an update is a couple of array writes. Three kinds are kept:
+ * <ul>
+ *     <li>gauges: time-weighted values, with the same semantics as {@link TimeWeightedMetric};</li>
+ *     <li>counters: long totals;</li>
+ *     <li>distributions: count, sum, sum of squares, min and max of recorded values.</li>
+ * </ul>
+ * A series is registered once by name and then updated through the int handle registration returns.
+ * Registering a name again returns the same handle; registering it as another kind is an error. Series are
+ * enumerated in registration order.
+ * <p>
+ * Not thread-safe.
+ */
+public final class MetricRegistry {
+
+    public enum Kind {GAUGE, COUNTER, DISTRIBUTION}
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private final Map<String, Integer> gaugeIds = new HashMap<>();
+    private String[] gaugeNames = new String[INITIAL_CAPACITY];
+    private double[] gaugeStartTimes = new double[INITIAL_CAPACITY];
+    private double[] gaugeLastTimes = new double[INITIAL_CAPACITY];
+    private double[] gaugeLastValues = new double[INITIAL_CAPACITY];
+    private double[] gaugeAreas = new double[INITIAL_CAPACITY];
+    private int gauges = 0;
+
+    private final Map<String, Integer> counterIds = new HashMap<>();
+    private String[] counterNames = new String[INITIAL_CAPACITY];
+    private long[] counterValues = new long[INITIAL_CAPACITY];
+    private int counters = 0;
+
+    private final Map<String, Integer> distributionIds = new HashMap<>();
+    private String[] distributionNames = new String[INITIAL_CAPACITY];
+    private long[] distributionCounts = new long[INITIAL_CAPACITY];
+    private double[] distributionSums = new double[INITIAL_CAPACITY];
+    private double[] distributionSquareSums = new double[INITIAL_CAPACITY];
+    private double[] distributionMins = new double[INITIAL_CAPACITY];
+    private double[] distributionMaxes = new double[INITIAL_CAPACITY];
+    private int distributions = 0;
+
+    /** Returns the handle of the gauge called {@code name}, registering it on first use. */
+    public int gauge(String name) {
+        Integer id = gaugeIds.get(name);
+        if (id != null) return id;
+        checkUnused(name, Kind.GAUGE);
+        if (gauges == gaugeNames.length) {
+            int capacity = gauges << 1;
+            gaugeNames = Arrays.copyOf(gaugeNames, capacity);
+            gaugeStartTimes = Arrays.copyOf(gaugeStartTimes, capacity);
+            gaugeLastTimes = Arrays.copyOf(gaugeLastTimes, capacity);
+            gaugeLastValues = Arrays.copyOf(gaugeLastValues, capacity);
+            gaugeAreas = Arrays.copyOf(gaugeAreas, capacity);
+        }
+        gaugeNames[gauges] = name;
+        gaugeStartTimes[gauges] = Double.NaN;
+        gaugeLastTimes[gauges] = Double.NaN;
+        gaugeIds.put(name, gauges);
+        return gauges++;
+    }
+
+    /** Returns the handle of the counter called {@code name}, registering it on first use. */
+    public int counter(String name) {
+        Integer id = counterIds.get(name);
+        if (id != null) return id;
+        checkUnused(name, Kind.COUNTER);
+        if (counters == counterNames.length) {
+            int capacity = counters << 1;
+            counterNames = Arrays.copyOf(counterNames, capacity);
+            counterValues = Arrays.copyOf(counterValues, capacity);
+        }
+        counterNames[counters] = name;
+        counterIds.put(name, counters);
+        return counters++;
+    }
+
+    /** Returns the handle of the distribution called {@code name}, registering it on first use. */
+    public int distribution(String name) {
+        Integer id = distributionIds.get(name);
+        if (id != null) return id;
+        checkUnused(name, Kind.DISTRIBUTION);
+        if (distributions == distributionNames.length) {
+            int capacity = distributions << 1;
+            distributionNames = Arrays.copyOf(distributionNames, capacity);
+            distributionCounts = Arrays.copyOf(distributionCounts, capacity);
+            distributionSums = Arrays.copyOf(distributionSums, capacity);
+            distributionSquareSums = Arrays.copyOf(distributionSquareSums, capacity);
+            distributionMins = Arrays.copyOf(distributionMins, capacity);
+            distributionMaxes = Arrays.copyOf(distributionMaxes, capacity);
+        }
+        distributionNames[distributions] = name;
+        distributionMins[distributions] = Double.POSITIVE_INFINITY;
+        distributionMaxes[distributions] = Double.NEGATIVE_INFINITY;
+        distributionIds.put(name, distributions);
+        return distributions++;
+    }
+
+    private void checkUnused(String name, Kind kind) {
+        Kind existing = getKind(name);
+        if (existing != null) {
+            throw new IllegalArgumentException("Metric " + name + " is a " + existing + ", not a " + kind);
+        }
+    }
+
+    /** Returns the kind of the series called {@code name}, or null if there is none. */
+    public Kind getKind(String name) {
+        return gaugeIds.containsKey(name) ? Kind.GAUGE
+                : counterIds.containsKey(name) ? Kind.COUNTER
+                : distributionIds.containsKey(name) ? Kind.DISTRIBUTION
+                : null;
+    }
+
+    /** Sets a gauge to {@code value} from simulation time {@code time} on. */
+    public void set(int gauge, double time, double value) {
+        if (Double.isNaN(gaugeStartTimes[gauge])) gaugeStartTimes[gauge] = time;
+        double lastTime = gaugeLastTimes[gauge];
+        if (!Double.isNaN(lastTime) && time > lastTime) {
+            gaugeAreas[gauge] += gaugeLastValues[gauge] * (time - lastTime);
+        }
+        gaugeLastTimes[gauge] = time;
+        gaugeLastValues[gauge] = value;
+    }
+
+    public void increment(int counter) {
+        counterValues[counter]++;
+    }
+
+    public void add(int counter, long delta) {
+        counterValues[counter] += delta;
+    }
+
+    public void record(int distribution, double value) {
+        distributionCounts[distribution]++;
+        distributionSums[distribution] += value;
+        distributionSquareSums[distribution] += value * value;
+        if (value < distributionMins[distribution]) distributionMins[distribution] = value;
+        if (value > distributionMaxes[distribution]) distributionMaxes[distribution] = value;
+    }
+
+    public int getGaugeCount() {
+        return gauges;
+    }
+
+    public String getGaugeName(int gauge) {
+        return gaugeNames[gauge];
+    }
+
+    public double getGaugeValue(int gauge) {
+        return gaugeLastValues[gauge];
+    }
+
+    /** Time-weighted average of a gauge up to {@code untilTime}, as {@link TimeWeightedMetric#average}. */
+    public double getGaugeAverage(int gauge, double untilTime) {
+        double startTime = gaugeStartTimes[gauge];
+        double lastTime = gaugeLastTimes[gauge];
+        if (Double.isNaN(startTime) || Double.isNaN(lastTime)) return 0.0;
+        double duration = Math.max(0.0, untilTime - startTime);
+        if (duration == 0.0) return gaugeLastValues[gauge]; // degenerate case
+        double areaWithTail = gaugeAreas[gauge];
+        if (untilTime > lastTime) {
+            areaWithTail += gaugeLastValues[gauge] * (untilTime - lastTime);
+        }
+        return areaWithTail / duration;
+    }
+
+    public int getCounterCount() {
+        return counters;
+    }
+
+    public String getCounterName(int counter) {
+        return counterNames[counter];
+    }
+
+    public long getCounterValue(int counter) {
+        return counterValues[counter];
+    }
+
+    public int getDistributionCount() {
+        return distributions;
+    }
+
+    public String getDistributionName(int distribution) {
+        return distributionNames[distribution];
+    }
+
+    /** Number of values recorded in a distribution. */
+    public long getSampleCount(int distribution) {
+        return distributionCounts[distribution];
+    }
+
+    public double getMean(int distribution) {
+        long count = distributionCounts[distribution];
+        return count == 0 ? 0.0 : distributionSums[distribution] / count;
+    }
+
+    public double getStDev(int distribution) {
+        long count = distributionCounts[distribution];
+        if (count < 2) return 0.0;
+        double mean = distributionSums[distribution] / count;
+        double variance = (distributionSquareSums[distribution] - count * mean * mean) / (count - 1);
+        return Math.sqrt(Math.max(variance, 0.0));
+    }
+
+    public double getMin(int distribution) {
+        return distributionCounts[distribution] == 0 ? 0.0 : distributionMins[distribution];
+    }
+
+    public double getMax(int distribution) {
+        return distributionCounts[distribution] == 0 ? 0.0 : distributionMaxes[distribution];
+    }
+
+    /**
+     * Prints one line per series, in registration order: a gauge's time-weighted average up to
+     * {@code untilTime} and last value, a counter's total, a distribution's count, mean, stDev, min and max.
+     * Gauges that were never set and empty distributions are left out.
+     */
+    public void printSummary(PrintStream out, double untilTime) {
+        for (int i = 0; i < gauges; i++) {
+            if (Double.isNaN(gaugeLastTimes[i])) continue;
+            out.printf(Locale.ROOT, "  %-32s time-weighted avg %.4f (last %.4f)%n", gaugeNames[i],
+                    getGaugeAverage(i, untilTime), gaugeLastValues[i]);
+        }
+        for (int i = 0; i < counters; i++) {
+            out.printf(Locale.ROOT, "  %-32s %d%n", counterNames[i], counterValues[i]);
+        }
+        for (int i = 0; i < distributions; i++) {
+            if (distributionCounts[i] == 0) continue;
+            out.printf(Locale.ROOT, "  %-32s n=%d mean %.6g / stDev %.6g / min %.6g / max %.6g%n", distributionNames[i],
+                    distributionCounts[i], getMean(i), getStDev(i), getMin(i), getMax(i));
+        }
+    }
+
+    /** Writes every series, by name, so {@link #readFrom} can restore them into another registry. */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeInt(gauges);
+        for (int i = 0; i < gauges; i++) {
+            out.writeUTF(gaugeNames[i]);
+            out.writeDouble(gaugeStartTimes[i]);
+            out.writeDouble(gaugeLastTimes[i]);
+            out.writeDouble(gaugeLastValues[i]);
+            out.writeDouble(gaugeAreas[i]);
+        }
+        out.writeInt(counters);
+        for (int i = 0; i < counters; i++) {
+            out.writeUTF(counterNames[i]);
+            out.writeLong(counterValues[i]);
+        }
+        out.writeInt(distributions);
+        for (int i = 0; i < distributions; i++) {
+            out.writeUTF(distributionNames[i]);
+            out.writeLong(distributionCounts[i]);
+            out.writeDouble(distributionSums[i]);
+            out.writeDouble(distributionSquareSums[i]);
+            out.writeDouble(distributionMins[i]);
+            out.writeDouble(distributionMaxes[i]);
+        }
+    }
+
+    /**
+     * Overwrites the series written by {@link #writeTo} with their written state, registering any that are
+     * missing. Series that were not written are left alone.
+     */
+    public void readFrom(DataInput in) throws IOException {
+        int gaugeCount = in.readInt();
+        for (int n = 0; n < gaugeCount; n++) {
+            int i = gauge(in.readUTF());
+            gaugeStartTimes[i] = in.readDouble();
+            gaugeLastTimes[i] = in.readDouble();
+            gaugeLastValues[i] = in.readDouble();
+            gaugeAreas[i] = in.readDouble();
+        }
+        int counterCount = in.readInt();
+        for (int n = 0; n < counterCount; n++) {
+            int i = counter(in.readUTF());
+            counterValues[i] = in.readLong();
+        }
+        int distributionCount = in.readInt();
+        for (int n = 0; n < distributionCount; n++) {
+            int i = distribution(in.readUTF());
+            distributionCounts[i] = in.readLong();
+            distributionSums[i] = in.readDouble();
+            distributionSquareSums[i] = in.readDouble();
+            distributionMins[i] = in.readDouble();
+            distributionMaxes[i] = in.readDouble();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.example.metrics;
+
+import java.io.PrintStream;
+import java.util.Locale;
+
+/**
+ * Process-wide scheduling throughput and latency, recorded by the broker so {@link SimulationMetrics} can
+ * report them for any suite. A run lasts from the first broker starting to the last one shutting down; its
+ * wall time is split into time blocked on the scheduling backend (node syncs, batch submissions, completion
+ * reports, and waiting for asynchronous decisions) and everything else, which is CloudSim's own event
+ * processing. Opening a run clears the figures, so they cover the current run and the ones overlapping it.
+ */
+public final class SchedulerMetrics {
+    private static final Histogram BATCH_WALL_NANOS = new Histogram();
+    private static final Histogram BATCH_SIM_MICROS = new Histogram();
+    private static final Histogram BATCH_SIZE = new Histogram();
+    private static long podsDecided = 0;
+    private static long blockedNanos = 0;
+
+    private static int activeRuns = 0;
+    private static long runStartNanos;
+    private static double runStartTime;
+    private static long wallNanos = 0;
+    private static double simTime = 0.0;
+
+    private SchedulerMetrics() {
+    }
+
+    /** Returns true if this opened a new run, i.e. no other run was active. */
+    public static synchronized boolean runStarted(double time) {
+        if (activeRuns > 0) {
+            activeRuns++;
+            return false;
+        }
+        reset();
+        activeRuns = 1;
+        runStartNanos = System.nanoTime();
+        runStartTime = time;
+        return true;
+    }
+
+    public static synchronized void runFinished(double time) {
+        if (activeRuns == 0 || --activeRuns > 0) return;
+        wallNanos += System.nanoTime() - runStartNanos;
+        simTime += Math.max(time - runStartTime, 0.0);
+    }
+
+    /**
+     * Records one batch of decisions: {@code pods} decided, {@code wallNanos} from sending the request to
+     * binding the decisions, and {@code simLatency} simulated seconds between the two.
+     */
+    public static void recordBatch(int pods, long wallNanos, double simLatency) {
+        BATCH_WALL_NANOS.record(wallNanos);
+        BATCH_SIM_MICROS.record(Math.round(simLatency * 1e6));
+        BATCH_SIZE.record(pods);
+        synchronized (SchedulerMetrics.class) {
+            podsDecided += pods;
+        }
+    }
+
+    /** Records {@code nanos} of wall time the event loop spent waiting on the scheduling backend. */
+    public static synchronized void recordBlocked(long nanos) {
+        blockedNanos += nanos;
+    }
+
+    public static synchronized long getPodsDecided() {
+        return podsDecided;
+    }
+
+    public static long getBatches() {
+        return BATCH_SIZE.getCount();
+    }
+
+    public static synchronized long getBlockedNanos() {
+        return blockedNanos;
+    }
+
+    /** Wall time of the finished runs, in nanoseconds. */
+    public static synchronized long getWallNanos() {
+        return wallNanos;
+    }
+
+    /** Simulated time covered by the finished runs, in seconds. */
+    public static synchronized double getSimTime() {
+        return simTime;
+    }
+
+    public static synchronized double getPodsPerWallSecond() {
+        return wallNanos > 0 ? podsDecided / (wallNanos / 1e9) : 0.0;
+    }
+
+    public static synchronized double getPodsPerSimSecond() {
+        return simTime > 0 ? podsDecided / simTime : 0.0;
+    }
+
+    /** Simulated seconds per wall second. */
+    public static synchronized double getSpeedup() {
+        return wallNanos > 0 ? simTime / (wallNanos / 1e9) : 0.0;
+    }
+
+    public static Histogram getBatchWallNanos() {
+        return BATCH_WALL_NANOS;
+    }
+
+    public static Histogram getBatchSimMicros() {
+        return BATCH_SIM_MICROS;
+    }
+
+    public static Histogram getBatchSize() {
+        return BATCH_SIZE;
+    }
+
+    public static synchronized boolean hasSamples() {
+        return wallNanos > 0 || getBatches() > 0;
+    }
+
+    /** Clears every figure, e.g. between runs in the same JVM. */
+    public static synchronized void reset() {
+        BATCH_WALL_NANOS.reset();
+        BATCH_SIM_MICROS.reset();
+        BATCH_SIZE.reset();
+        podsDecided = 0;
+        blockedNanos = 0;
+        activeRuns = 0;
+        wallNanos = 0;
+        simTime = 0.0;
+    }
+
+    public static synchronized void printSummary(PrintStream out) {
+        out.printf(Locale.ROOT, "Scheduling (%d batches, %d pods decided):%n", getBatches(), podsDecided);
+        out.printf(Locale.ROOT, "  %-18s %.1f pods/wall-s, %.4f pods/sim-s%n", "throughput",
+                getPodsPerWallSecond(), getPodsPerSimSecond());
+        out.printf(Locale.ROOT, "  %-18s wall %.3f / %.3f / %.3f ms, simulated %.3f / %.3f / %.3f s (p50 / p99 / max)%n",
+                "batch latency",
+                BATCH_WALL_NANOS.getPercentile(0.5) / 1e6, BATCH_WALL_NANOS.getPercentile(0.99) / 1e6, BATCH_WALL_NANOS.getMax() / 1e6,
+                BATCH_SIM_MICROS.getPercentile(0.5) / 1e6, BATCH_SIM_MICROS.getPercentile(0.99) / 1e6, BATCH_SIM_MICROS.getMax() / 1e6);
+        out.printf(Locale.ROOT, "  %-18s %.1f / p99 %d / max %d pods%n", "batch size",
+                BATCH_SIZE.getMean(), BATCH_SIZE.getPercentile(0.99), BATCH_SIZE.getMax());
+        if (wallNanos > 0) {
+            long blocked = Math.min(blockedNanos, wallNanos);
+            out.printf(Locale.ROOT, "  %-18s %.1f sim-s per wall-s%n", "sim/wall ratio", getSpeedup());
+            out.printf(Locale.ROOT, "  %-18s %.1f ms: CloudSim %.1f ms (%.1f%%), blocked on control plane %.1f ms (%.1f%%)%n",
+                    "wall time", wallNanos / 1e6, (wallNanos - blocked) / 1e6, 100.0 * (wallNanos - blocked) / wallNanos,
+                    blocked / 1e6, 100.0 * blocked / wallNanos);
+        }
+    }
+}
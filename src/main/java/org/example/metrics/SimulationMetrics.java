@@ -8,6 +8,8 @@ import org.cloudbus.cloudsim.core.CloudSim;
 import org.cloudbus.cloudsim.power.PowerDatacenter;
 import org.example.kubernetes_broker.PowerDatacenterCustom;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
@@ -51,8 +53,18 @@ public class SimulationMetrics {
 
 
             System.out.printf("Energy consumption: %.2f kWh%n", powerDatacenter.getPower() / (3600 * 1000));
+            EnergyAccountant energyAccountant = powerDatacenter.getEnergyAccountant();
+            if (energyAccountant != null) {
+                System.out.printf("Energy consumption (exact): %.2f kWh over %d utilisation changes%n",
+                        energyAccountant.getTotalEnergy(simTime) / (3600 * 1000), energyAccountant.getChangePointCount());
+            }
             System.out.println("Number of hosts: " + numberOfHosts);
-            System.out.println("Time-weighted avg consolidation: " + powerDatacenter.getConsolidationAverage(simTime));
+            System.out.println("Datacenter metrics:");
+            powerDatacenter.getMetrics().printSummary(System.out, simTime);
+            TimeWeightedDistribution consolidation = powerDatacenter.getConsolidationDistribution();
+            System.out.printf("  %-32s time-weighted p50 %.3f / p90 %.3f / p99 %.3f, min %.3f / max %.3f%n", "consolidation",
+                    consolidation.getPercentile(0.5, simTime), consolidation.getPercentile(0.9, simTime),
+                    consolidation.getPercentile(0.99, simTime), consolidation.getMin(), consolidation.getMax());
 
         }
         else{
@@ -64,7 +76,31 @@ public class SimulationMetrics {
         }
         else System.out.println("ERROR: No PowerVM information provided!");
 
+        if (FragmentationMetrics.hasSamples()) {
+            FragmentationMetrics.printSummary(System.out, simTime);
+        }
+
+        if (CloudletMetrics.hasSamples()) {
+            CloudletMetrics.printSummary(System.out);
+        }
+
+        if (SchedulerMetrics.hasSamples()) {
+            SchedulerMetrics.printSummary(System.out);
+        }
+
+        if (ControlPlaneMetrics.hasSamples()) {
+            ControlPlaneMetrics.printSummary(System.out);
+        }
 
         System.out.println("--------------------------------");
     }
+
+    /** Writes the per-endpoint control plane latency histograms to {@code csvPath}. See {@link ControlPlaneMetrics#writeCsv}. */
+    public void exportControlPlaneLatency(String csvPath) {
+        try {
+            ControlPlaneMetrics.writeCsv(Path.of(csvPath));
+        } catch (IOException e) {
+            Log.printlnConcat("Failed to write control plane latency CSV: ", e.getMessage());
+        }
+    }
 }
@@ -0,0 +1,368 @@
+package org.example.metrics;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * A {@link TimeWeightedMetric} that also keeps how long each value was held, so it can report time-weighted
+ * percentiles, the min and max, and averages over any {@code [t0, t1]} window.
+ * <p>
+ * Nothing is kept per sample. The time spent at each value is summed into logarithmic value buckets, so a
+ * percentile is within {@link #RELATIVE_ACCURACY} of the true value and the bucket count only grows with the
+ * range of values seen (a few hundred for a utilisation that spans 0.01 to 1). The area under the value is
+ * also summed into time slots, which answer windowed averages exactly at slot boundaries and interpolate
+ * within the first and last slot of a window. At most {@link #MAX_SLOTS} slots are kept: when a run
+ * outgrows them, adjacent slots are folded in pairs and the slot width doubles, so windowed averages get
+ * coarser over long runs while memory stays fixed. Two distributions whose slot widths differ by such
+ * doublings can be merged, which pools their time: merging every host's utilisation gives the
+ * datacenter-wide distribution.
+ * <p>
+ * As in {@link TimeWeightedMetric}, a value holds from the time it is added until the next one, and the
+ * last value holds up to the time a query asks about. Negative values are recorded as 0.
+ * <p>
+ * Not thread-safe.
+ */
+public final class TimeWeightedDistribution {
+    public static final double RELATIVE_ACCURACY = 0.01;
+    /** Slot width used by the no-argument constructor, CloudSim's usual scheduling interval. */
+    public static final double DEFAULT_SLOT_WIDTH = 300.0;
+    /** Most time slots kept, see the class comment. */
+    public static final int MAX_SLOTS = 4096;
+
+    private static final double GAMMA = (1 + RELATIVE_ACCURACY) / (1 - RELATIVE_ACCURACY);
+    private static final double LOG_GAMMA = Math.log(GAMMA);
+    // Smaller values count as zero, which also bounds how many buckets tiny values can add
+    private static final double MIN_POSITIVE = 1e-9;
+
+    private double slotWidth;
+
+    private double startTime = Double.NaN;
+    private double lastTime = Double.NaN;
+    private double lastValue = 0.0;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    // Time spent at zero, and at values in bucket (bucketOffset + i)
+    private double zeroTime = 0.0;
+    private double[] bucketTimes = new double[0];
+    private int bucketOffset = 0;
+    private double totalTime = 0.0;
+    private double totalArea = 0.0;
+
+    // Area under the value, and time covered, in slot i = [i * slotWidth, (i + 1) * slotWidth)
+    private double[] slotAreas = new double[0];
+    private double[] slotTimes = new double[0];
+
+    public TimeWeightedDistribution() {
+        this(DEFAULT_SLOT_WIDTH);
+    }
+
+    public TimeWeightedDistribution(double slotWidth) {
+        if (!(slotWidth > 0)) {
+            throw new IllegalArgumentException("Slot width must be positive");
+        }
+        this.slotWidth = slotWidth;
+    }
+
+    /** Add a sample at simulation time t. */
+    public void add(double t, double value) {
+        value = Math.max(value, 0.0);
+        if (Double.isNaN(startTime)) startTime = t;
+        if (!Double.isNaN(lastTime) && t > lastTime) {
+            hold(lastValue, lastTime, t);
+        }
+        lastTime = t;
+        lastValue = value;
+        if (value < min) min = value;
+        if (value > max) max = value;
+    }
+
+    /** Time-weighted average up to {@code untilTime}, as {@link TimeWeightedMetric#average}. */
+    public double average(double untilTime) {
+        if (Double.isNaN(startTime)) return 0.0;
+        double tail = tailTime(untilTime);
+        double time = totalTime + tail;
+        if (time == 0.0) return lastValue; // degenerate case
+        return (totalArea + lastValue * tail) / time;
+    }
+
+    /**
+     * Time-weighted average over {@code [t0, t1]}, counting only the time the metric was set. Returns 0 if
+     * the metric was not set at any time in the window.
+     */
+    public double getAverage(double t0, double t1) {
+        double area = 0.0;
+        double time = 0.0;
+        if (t1 > t0 && slotAreas.length > 0) {
+            int first = Math.max(slot(t0), 0);
+            int last = Math.min(slot(t1), slotAreas.length - 1);
+            for (int i = first; i <= last; i++) {
+                double from = Math.max(t0, i * slotWidth);
+                double to = Math.min(t1, (i + 1) * slotWidth);
+                if (to <= from) continue;
+                double fraction = (to - from) / slotWidth;
+                area += slotAreas[i] * fraction;
+                time += slotTimes[i] * fraction;
+            }
+        }
+        if (!Double.isNaN(lastTime)) {
+            double tail = Math.max(0.0, t1 - Math.max(t0, lastTime));
+            area += lastValue * tail;
+            time += tail;
+        }
+        return time > 0 ? area / time : 0.0;
+    }
+
+    /**
+     * The value the metric was at or below for fraction {@code q} (0..1) of the time up to {@code untilTime},
+     * or 0 if it was never set.
+     */
+    public double getPercentile(double q, double untilTime) {
+        if (Double.isNaN(startTime)) return 0.0;
+        double tail = tailTime(untilTime);
+        double time = totalTime + tail;
+        if (time == 0.0) return lastValue;
+        int tailBucket = lastValue < MIN_POSITIVE ? Integer.MIN_VALUE : bucketIndex(lastValue);
+
+        double rank = q * time;
+        double seen = zeroTime + (tailBucket == Integer.MIN_VALUE ? tail : 0.0);
+        if (seen >= rank && seen > 0) return 0.0;
+        if (tailBucket != Integer.MIN_VALUE && tailBucket < bucketOffset) {
+            seen += tail;
+            if (seen >= rank) return Math.max(min, Math.min(max, bucketValue(tailBucket)));
+        }
+        for (int i = 0; i < bucketTimes.length; i++) {
+            seen += bucketTimes[i];
+            if (bucketOffset + i == tailBucket) seen += tail;
+            if (seen >= rank && seen > 0) {
+                return Math.max(min, Math.min(max, bucketValue(bucketOffset + i)));
+            }
+        }
+        // The tail's bucket may lie above the buckets filled so far
+        return tailBucket >= bucketOffset + bucketTimes.length ? Math.max(min, Math.min(max, bucketValue(tailBucket))) : max;
+    }
+
+    /** Smallest value ever set, or 0 if none was. */
+    public double getMin() {
+        return Double.isNaN(startTime) ? 0.0 : min;
+    }
+
+    /** Largest value ever set, or 0 if none was. */
+    public double getMax() {
+        return Double.isNaN(startTime) ? 0.0 : max;
+    }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    public double getLastTime() {
+        return lastTime;
+    }
+
+    public double getLastValue() {
+        return lastValue;
+    }
+
+    /** Current slot width, the initial one doubled once per fold. */
+    public double getSlotWidth() {
+        return slotWidth;
+    }
+
+    /**
+     * Adds {@code other}'s time, as it stands at {@code untilTime}, to this distribution. {@code other} is
+     * left unchanged and its last value counts as held up to {@code untilTime}; this distribution's own last
+     * value keeps holding.
+     *
+     * @throws IllegalArgumentException if neither slot width is the other one doubled zero or more times
+     */
+    public void merge(TimeWeightedDistribution other, double untilTime) {
+        if (!foldable(slotWidth, other.slotWidth)) {
+            throw new IllegalArgumentException("Cannot merge distributions with slot widths " + slotWidth + " and " + other.slotWidth);
+        }
+        if (Double.isNaN(other.startTime)) return;
+        if (Double.isNaN(startTime) || other.startTime < startTime) startTime = other.startTime;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+
+        zeroTime += other.zeroTime;
+        for (int i = 0; i < other.bucketTimes.length; i++) {
+            if (other.bucketTimes[i] > 0) {
+                int bucket = bucket(other.bucketOffset + i); // may replace bucketTimes
+                bucketTimes[bucket] += other.bucketTimes[i];
+            }
+        }
+        totalTime += other.totalTime;
+        totalArea += other.totalArea;
+
+        while (slotWidth < other.slotWidth) {
+            fold();
+        }
+        // A power of two, so the slot positions below are exact
+        double scale = other.slotWidth / slotWidth;
+        if (other.slotAreas.length > 0) {
+            ensureSlots((int) ((other.slotAreas.length - 1) * scale) + 1);
+        }
+        for (int i = 0; i < other.slotAreas.length; i++) {
+            int slot = (int) (i * scale);
+            slotAreas[slot] += other.slotAreas[i];
+            slotTimes[slot] += other.slotTimes[i];
+        }
+        if (untilTime > other.lastTime) {
+            hold(other.lastValue, other.lastTime, untilTime);
+        }
+    }
+
+    /**
+     * Writes the whole state so {@link #readFrom} can restore it into a distribution with the same initial
+     * slot width.
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeDouble(slotWidth);
+        out.writeDouble(startTime);
+        out.writeDouble(lastTime);
+        out.writeDouble(lastValue);
+        out.writeDouble(min);
+        out.writeDouble(max);
+        out.writeDouble(zeroTime);
+        out.writeDouble(totalTime);
+        out.writeDouble(totalArea);
+        out.writeInt(bucketOffset);
+        out.writeInt(bucketTimes.length);
+        for (double time : bucketTimes) {
+            out.writeDouble(time);
+        }
+        out.writeInt(slotAreas.length);
+        for (int i = 0; i < slotAreas.length; i++) {
+            out.writeDouble(slotAreas[i]);
+            out.writeDouble(slotTimes[i]);
+        }
+    }
+
+    /**
+     * Replaces this distribution's state with the one written by {@link #writeTo}.
+     *
+     * @throws IOException if it cannot be read or its slot width is not a fold of this one's
+     */
+    public void readFrom(DataInput in) throws IOException {
+        double width = in.readDouble();
+        if (!foldable(slotWidth, width)) {
+            throw new IOException("Distribution was written with slot width " + width + ", not " + slotWidth);
+        }
+        slotWidth = width;
+        startTime = in.readDouble();
+        lastTime = in.readDouble();
+        lastValue = in.readDouble();
+        min = in.readDouble();
+        max = in.readDouble();
+        zeroTime = in.readDouble();
+        totalTime = in.readDouble();
+        totalArea = in.readDouble();
+        bucketOffset = in.readInt();
+        bucketTimes = new double[in.readInt()];
+        for (int i = 0; i < bucketTimes.length; i++) {
+            bucketTimes[i] = in.readDouble();
+        }
+        int slots = in.readInt();
+        if (slots > MAX_SLOTS) {
+            throw new IOException("Distribution was written with " + slots + " slots, more than " + MAX_SLOTS);
+        }
+        slotAreas = new double[slots];
+        slotTimes = new double[slots];
+        for (int i = 0; i < slots; i++) {
+            slotAreas[i] = in.readDouble();
+            slotTimes[i] = in.readDouble();
+        }
+    }
+
+    private double tailTime(double untilTime) {
+        return Double.isNaN(lastTime) ? 0.0 : Math.max(0.0, untilTime - lastTime);
+    }
+
+    /** Counts {@code value} as held over {@code [from, to)}. */
+    private void hold(double value, double from, double to) {
+        double time = to - from;
+        if (value < MIN_POSITIVE) {
+            zeroTime += time;
+        } else {
+            int bucket = bucket(bucketIndex(value)); // may replace bucketTimes
+            bucketTimes[bucket] += time;
+        }
+        totalTime += time;
+        totalArea += value * time;
+
+        // Times before 0 are left out of the slots, but not of the totals above
+        while (slot(to) >= MAX_SLOTS) {
+            fold();
+        }
+        int first = Math.max(slot(from), 0);
+        int last = slot(to);
+        if (last < first) return;
+        ensureSlots(last + 1);
+        for (int i = first; i <= last; i++) {
+            double overlap = Math.min(to, (i + 1) * slotWidth) - Math.max(from, i * slotWidth);
+            if (overlap <= 0) continue;
+            slotAreas[i] += value * overlap;
+            slotTimes[i] += overlap;
+        }
+    }
+
+    private int slot(double time) {
+        return (int) Math.floor(time / slotWidth);
+    }
+
+    private void ensureSlots(int slots) {
+        if (slots <= slotAreas.length) return;
+        int capacity = Math.min(Math.max(slots, slotAreas.length << 1), MAX_SLOTS);
+        slotAreas = Arrays.copyOf(slotAreas, capacity);
+        slotTimes = Arrays.copyOf(slotTimes, capacity);
+    }
+
+    /** Doubles the slot width, adding each pair of slots into one. */
+    private void fold() {
+        int folded = (slotAreas.length + 1) >> 1;
+        for (int i = 0; i < folded; i++) {
+            int odd = 2 * i + 1;
+            slotAreas[i] = slotAreas[2 * i] + (odd < slotAreas.length ? slotAreas[odd] : 0.0);
+            slotTimes[i] = slotTimes[2 * i] + (odd < slotTimes.length ? slotTimes[odd] : 0.0);
+        }
+        Arrays.fill(slotAreas, folded, slotAreas.length, 0.0);
+        Arrays.fill(slotTimes, folded, slotTimes.length, 0.0);
+        slotWidth *= 2;
+    }
+
+    /** Whether one width is the other doubled zero or more times. */
+    private static boolean foldable(double width, double otherWidth) {
+        double ratio = Math.max(width, otherWidth) / Math.min(width, otherWidth);
+        return ratio == Math.scalb(1.0, Math.getExponent(ratio));
+    }
+
+    /** Returns the array position of bucket {@code index}, growing the array to cover it. */
+    private int bucket(int index) {
+        if (bucketTimes.length == 0) {
+            bucketTimes = new double[8];
+            bucketOffset = index;
+        } else if (index < bucketOffset) {
+            int grow = Math.max(bucketOffset - index, bucketTimes.length >> 1);
+            double[] grown = new double[bucketTimes.length + grow];
+            System.arraycopy(bucketTimes, 0, grown, grow, bucketTimes.length);
+            bucketTimes = grown;
+            bucketOffset -= grow;
+        } else if (index >= bucketOffset + bucketTimes.length) {
+            int needed = index - bucketOffset + 1;
+            bucketTimes = Arrays.copyOf(bucketTimes, Math.max(needed, bucketTimes.length + (bucketTimes.length >> 1)));
+        }
+        return index - bucketOffset;
+    }
+
+    static int bucketIndex(double value) {
+        return (int) Math.ceil(Math.log(value) / LOG_GAMMA);
+    }
+
+    /** A value within {@link #RELATIVE_ACCURACY} of every value in bucket {@code index}. */
+    static double bucketValue(int index) {
+        return 2 * Math.pow(GAMMA, index) / (GAMMA + 1);
+    }
+}
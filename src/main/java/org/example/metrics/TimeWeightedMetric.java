@@ -27,4 +27,28 @@ public final class TimeWeightedMetric {
         }
         return areaWithTail / duration;
     }
+
+    public double getStartTime() {
+        return startTime;
+    }
+
+    public double getLastTime() {
+        return lastTime;
+    }
+
+    public double getLastValue() {
+        return lastValue;
+    }
+
+    public double getArea() {
+        return area;
+    }
+
+    /** Puts the metric back in a state read from its getters, e.g. when a simulation is restored. */
+    public void restore(double startTime, double lastTime, double lastValue, double area) {
+        this.startTime = startTime;
+        this.lastTime = lastTime;
+        this.lastValue = lastValue;
+        this.area = area;
+    }
 }
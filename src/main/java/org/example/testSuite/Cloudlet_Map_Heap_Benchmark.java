@@ -0,0 +1,174 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+
+package org.example.testSuite;
+
+import org.example.kubernetes_broker.IntDoubleHashMap;
+import org.example.kubernetes_broker.IntObjectHashMap;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fills the broker's per-cloudlet maps and their java.util.HashMap equivalents with N entries and prints the
+ * heap each retains, and the time to fill it and to drop every other entry. The values are allocated up
+ * front and shared, as the broker's maps share the Cloudlet objects, so only the map itself is measured.
+ * Retained heap is the used heap after a full GC with the map alive, minus the used heap after it is dropped;
+ * a baseline taken before filling is not used, since the first full GC of a run still leaves startup garbage.
+ * <p>
+ * It then times one pass of the broker's cloudSimAllocation over N ready cloudlets, which visits them in id
+ * order and submits every other one, and prints the bytes the pass allocates: once with the ready ids kept in
+ * a BitSet next to the map, as the broker does, and once by sorting a copy of the map's keys.
+ * <p>
+ * Run with a fixed heap and the serial collector for stable figures, e.g. -Xms2g -Xmx2g -XX:+UseSerialGC.
+ * <p>
+ * Arguments (all optional): entries.
+ */
+public class Cloudlet_Map_Heap_Benchmark {
+
+	public static void main(String[] args) {
+		int entries = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+
+		// Stand-ins for the Cloudlet objects and submit times, which the maps only reference
+		Object[] values = new Object[entries];
+		for (int i = 0; i < entries; i++) {
+			values[i] = new Object();
+		}
+
+		System.out.println("Map heap for " + entries + " tracked cloudlets (" + System.getProperty("java.version") + ")");
+
+		measure("HashMap<Integer,Cloudlet>", () -> {
+			Map<Integer, Object> map = new HashMap<>();
+			for (int i = 0; i < entries; i++) {
+				map.put(i, values[i]);
+			}
+			return map;
+		}, map -> {
+			List<Integer> odd = new ArrayList<>();
+			for (Integer key : map.keySet()) {
+				if ((key & 1) == 1) odd.add(key);
+			}
+			for (Integer key : odd) {
+				map.remove(key);
+			}
+		});
+
+		measure("IntObjectHashMap<Cloudlet>", () -> {
+			IntObjectHashMap<Object> map = new IntObjectHashMap<>();
+			for (int i = 0; i < entries; i++) {
+				map.put(i, values[i]);
+			}
+			return map;
+		}, map -> map.removeIf((key, value) -> (key & 1) == 1));
+
+		measure("IntObjectHashMap<Double>", () -> {
+			IntObjectHashMap<Double> map = new IntObjectHashMap<>();
+			for (int i = 0; i < entries; i++) {
+				map.put(i, i * 0.5);
+			}
+			return map;
+		}, map -> {
+			for (int i = 1; i < entries; i += 2) {
+				map.remove(i);
+			}
+		});
+
+		measure("IntDoubleHashMap", () -> {
+			IntDoubleHashMap map = new IntDoubleHashMap();
+			for (int i = 0; i < entries; i++) {
+				map.put(i, i * 0.5);
+			}
+			return map;
+		}, map -> {
+			for (int i = 1; i < entries; i += 2) {
+				map.remove(i, Double.NaN);
+			}
+		});
+
+		System.out.println("Ready-cloudlet pass over " + entries + " cloudlets, in id order, submitting every other one");
+		for (int round = 0; round < 3; round++) {
+			IntObjectHashMap<Object> ready = new IntObjectHashMap<>();
+			BitSet readyIds = new BitSet();
+			for (int i = 0; i < entries; i++) {
+				ready.put(i, values[i]);
+				readyIds.set(i);
+			}
+			measurePass("map + BitSet (broker)", () -> {
+				for (int id = readyIds.nextSetBit(0); id >= 0; id = readyIds.nextSetBit(id + 1)) {
+					if ((id & 1) == 0 && ready.get(id) != null) {
+						ready.remove(id);
+						readyIds.clear(id);
+					}
+				}
+			});
+
+			IntObjectHashMap<Object> sorted = new IntObjectHashMap<>();
+			for (int i = 0; i < entries; i++) {
+				sorted.put(i, values[i]);
+			}
+			measurePass("map + sorted keys()", () -> {
+				int[] ids = sorted.keys();
+				Arrays.sort(ids);
+				for (int id : ids) {
+					if ((id & 1) == 0 && sorted.get(id) != null) {
+						sorted.remove(id);
+					}
+				}
+			});
+		}
+	}
+
+	private static void measurePass(String name, Runnable pass) {
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+		long start = System.nanoTime();
+		pass.run();
+		long elapsed = System.nanoTime() - start;
+		long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+		System.out.printf("  %-28s %7.2f ms  allocated %,d bytes%n", name, elapsed / 1e6, allocated);
+	}
+
+	private interface Fill<M> {
+		M fill();
+	}
+
+	private interface Drain<M> {
+		void drain(M map);
+	}
+
+	private static <M> void measure(String name, Fill<M> fill, Drain<M> drain) {
+		long start = System.nanoTime();
+		M map = fill.fill();
+		long filled = System.nanoTime();
+		long withMap = usedHeap();
+
+		long drainStart = System.nanoTime();
+		drain.drain(map);
+		long drained = System.nanoTime();
+		map = null;
+		long retained = withMap - usedHeap();
+
+		System.out.printf("  %-28s %7.1f MB  fill %5d ms  remove half %5d ms%n", name, retained / 1e6,
+				(filled - start) / 1_000_000, (drained - drainStart) / 1_000_000);
+	}
+
+	private static long usedHeap() {
+		Runtime runtime = Runtime.getRuntime();
+		for (int i = 0; i < 3; i++) {
+			System.gc();
+		}
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+}
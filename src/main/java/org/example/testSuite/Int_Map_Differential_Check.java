@@ -0,0 +1,118 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+
+package org.example.testSuite;
+
+import org.example.kubernetes_broker.IntDoubleHashMap;
+import org.example.kubernetes_broker.IntObjectHashMap;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the same random put/remove/get/removeIf operations against the broker's primitive-keyed maps and a
+ * java.util.HashMap, and fails on the first difference in a returned value, the size or the final contents.
+ * Each map is checked with dense keys (a small range, so keys are reused and probe runs are long), strided
+ * keys (multiples of a power of two) and keys spread over the whole int range.
+ * <p>
+ * Arguments (all optional): operations per key pattern, random seed.
+ */
+public class Int_Map_Differential_Check {
+
+	public static void main(String[] args) {
+		int operations = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+		long seed = args.length > 1 ? Long.parseLong(args[1]) : 42L;
+
+		String[] patterns = {"dense", "strided", "spread"};
+		for (int p = 0; p < patterns.length; p++) {
+			checkObjectMap(patterns[p], operations, new Random(seed + p));
+			checkDoubleMap(patterns[p], operations, new Random(seed + p));
+		}
+		System.out.println("All checks passed");
+	}
+
+	private static int nextKey(String pattern, Random random) {
+		return switch (pattern) {
+			case "dense" -> random.nextInt(4096);
+			case "strided" -> random.nextInt(4096) << 10;
+			default -> random.nextInt();
+		};
+	}
+
+	private static void checkObjectMap(String pattern, int operations, Random random) {
+		IntObjectHashMap<Integer> map = new IntObjectHashMap<>();
+		Map<Integer, Integer> expected = new HashMap<>();
+
+		for (int op = 0; op < operations; op++) {
+			int key = nextKey(pattern, random);
+			// One removeIf per thousand operations, as each one walks the whole map
+			int choice = random.nextInt(1000);
+			if (choice < 450) {
+				int value = random.nextInt();
+				check(map.put(key, value), expected.put(key, value), "put", pattern, op);
+			} else if (choice < 750) {
+				check(map.remove(key), expected.remove(key), "remove", pattern, op);
+			} else if (choice < 999) {
+				check(map.get(key), expected.get(key), "get", pattern, op);
+			} else {
+				int modulus = 2 + random.nextInt(7);
+				int removed = map.removeIf((k, v) -> Math.floorMod(v, modulus) == 0);
+				int before = expected.size();
+				expected.values().removeIf(v -> Math.floorMod(v, modulus) == 0);
+				check(removed, before - expected.size(), "removeIf", pattern, op);
+			}
+			check(map.size(), expected.size(), "size", pattern, op);
+		}
+
+		int[] keys = map.keys();
+		Arrays.sort(keys);
+		int[] expectedKeys = expected.keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+		if (!Arrays.equals(keys, expectedKeys)) {
+			throw new AssertionError("IntObjectHashMap (" + pattern + "): keys differ at the end");
+		}
+		map.forEach((key, value) -> check(value, expected.get(key), "forEach", pattern, operations));
+		System.out.println("IntObjectHashMap  " + pattern + ": " + operations + " operations, " + map.size() + " entries left, OK");
+	}
+
+	private static void checkDoubleMap(String pattern, int operations, Random random) {
+		IntDoubleHashMap map = new IntDoubleHashMap();
+		Map<Integer, Double> expected = new HashMap<>();
+
+		for (int op = 0; op < operations; op++) {
+			int key = nextKey(pattern, random);
+			int choice = random.nextInt(100);
+			if (choice < 45) {
+				double value = random.nextDouble();
+				map.put(key, value);
+				expected.put(key, value);
+			} else if (choice < 75) {
+				Double previous = expected.remove(key);
+				check(map.remove(key, Double.NaN), previous != null ? previous : Double.NaN, "remove", pattern, op);
+			} else {
+				Double value = expected.get(key);
+				check(map.get(key, Double.NaN), value != null ? value : Double.NaN, "get", pattern, op);
+			}
+			check(map.size(), expected.size(), "size", pattern, op);
+		}
+		System.out.println("IntDoubleHashMap  " + pattern + ": " + operations + " operations, " + map.size() + " entries left, OK");
+	}
+
+	private static void check(Object actual, Object expected, String operation, String pattern, int op) {
+		boolean same = actual == null ? expected == null
+				: actual instanceof Double d ? expected instanceof Double e && Double.compare(d, e) == 0
+				: actual.equals(expected);
+		if (!same) {
+			throw new AssertionError(operation + " (" + pattern + ", operation " + op + "): got " + actual
+					+ ", expected " + expected);
+		}
+	}
+}
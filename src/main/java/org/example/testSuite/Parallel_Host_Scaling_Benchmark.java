@@ -0,0 +1,197 @@
+/*
+ * Title:        CloudSim Toolkit
+ * Description:  CloudSim (Cloud Simulation) Toolkit for Modeling and Simulation
+ *               of Clouds
+ * Licence:      GPL - http://www.gnu.org/copyleft/gpl.html
+ *
+ * Copyright (c) 2009, The University of Melbourne, Australia
+ */
+
+
+package org.example.testSuite;
+
+import org.cloudbus.cloudsim.*;
+import org.cloudbus.cloudsim.core.CloudSim;
+import org.cloudbus.cloudsim.power.PowerHost;
+import org.cloudbus.cloudsim.power.models.PowerModelLinear;
+import org.cloudbus.cloudsim.provisioners.BwProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.PeProvisionerSimple;
+import org.cloudbus.cloudsim.provisioners.RamProvisionerSimple;
+import org.example.kubernetes_broker.InProcessSchedulingBackend;
+import org.example.kubernetes_broker.Live_Kubernetes_Broker_Ex;
+import org.example.kubernetes_broker.PowerDatacenterCustom;
+import org.example.kubernetes_broker.PowerVmCustom;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Runs the same large datacenter with parallel host processing on 1 to N cores and prints the wall time
+ * and speedup of each run. The scheduler runs in-process, so no control plane is needed. Every run must
+ * end with the same finish time and energy as the single-core run.
+ * <p>
+ * Arguments (all optional): hosts, cloudlets per VM, max cores.
+ */
+public class Parallel_Host_Scaling_Benchmark {
+
+	private static final int PES_PER_HOST = 4;
+
+	private static List<Vm> createVM(int userId, int vms) {
+		LinkedList<Vm> list = new LinkedList<>();
+
+		//VM Parameters
+		long size = 10000; //image size (MB)
+		int ram = 512; //vm memory (MB)
+		int mips = 1000;
+		long bw = 1000;
+		String vmm = "Xen"; //VMM name
+
+		for (int i = 0; i < vms; i++) {
+			list.add(new PowerVmCustom(i, userId, mips, PES_PER_HOST, ram, bw, size, 0, vmm, new CloudletSchedulerTimeShared(), 20, i));
+		}
+
+		return list;
+	}
+
+	private static List<Cloudlet> createCloudlet(int userId, int cloudlets) {
+		LinkedList<Cloudlet> list = new LinkedList<>();
+
+		//cloudlet parameters
+		long fileSize = 300;
+		long outputSize = 300;
+		int pesNumber = 1;
+		UtilizationModel utilizationModel = new UtilizationModelFull();
+
+		for (int i = 0; i < cloudlets; i++) {
+			// Spread the lengths so cloudlets finish at many different times
+			long length = 20000 + (i * 7919L) % 200000;
+			Cloudlet cloudlet = new Cloudlet(i, length, pesNumber, fileSize, outputSize, utilizationModel, utilizationModel, utilizationModel);
+			cloudlet.setUserId(userId);
+			list.add(cloudlet);
+		}
+
+		return list;
+	}
+
+	public static void main(String[] args) {
+		int hosts = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		int cloudletsPerVm = args.length > 1 ? Integer.parseInt(args[1]) : 4;
+		int maxCores = args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors();
+
+		// Hosts are only processed in parallel while logging is off
+		Log.disable();
+
+		try {
+			System.out.println("Parallel host processing: " + hosts + " hosts, " + hosts * cloudletsPerVm + " cloudlets");
+			System.out.println("cores\twall (ms)\tspeedup\tfinish time\tenergy (W*sec)\tidentical");
+
+			Result baseline = null;
+			for (int cores = 1; cores <= maxCores; cores++) {
+				Result result = run(hosts, cloudletsPerVm, cores);
+				if (baseline == null) {
+					baseline = result;
+				}
+				boolean identical = Double.doubleToLongBits(result.lastClock) == Double.doubleToLongBits(baseline.lastClock)
+						&& Double.doubleToLongBits(result.energy) == Double.doubleToLongBits(baseline.energy)
+						&& result.finished == baseline.finished;
+				System.out.printf("%d\t%d\t\t%.2f\t%.2f\t\t%.2f\t%b%n",
+						cores,
+						result.wallNanos / 1_000_000,
+						(double) baseline.wallNanos / result.wallNanos,
+						result.lastClock,
+						result.energy,
+						identical);
+			}
+		}
+		catch (Exception e)
+		{
+			e.printStackTrace();
+			System.out.println("The benchmark has been terminated due to an unexpected error");
+		}
+	}
+
+	private static Result run(int hosts, int cloudletsPerVm, int cores) throws Exception {
+		CloudSim.init(1, Calendar.getInstance(), false);
+		PowerDatacenterCustom datacenter = createDatacenter("Datacenter_0", hosts);
+		datacenter.setParallelHostProcessing(cores);
+
+		Live_Kubernetes_Broker_Ex broker = new Live_Kubernetes_Broker_Ex("Broker_0", -1, new InProcessSchedulingBackend());
+		int brokerId = broker.getId();
+		broker.submitGuestList(createVM(brokerId, hosts));
+		broker.submitCloudletList(createCloudlet(brokerId, hosts * cloudletsPerVm));
+
+		long start = System.nanoTime();
+		double lastClock = CloudSim.startSimulation();
+		long wallNanos = System.nanoTime() - start;
+		CloudSim.stopSimulation();
+		datacenter.setParallelHostProcessing(1);
+
+		return new Result(wallNanos, lastClock, datacenter.getPower(), broker.getCloudletReceivedList().size());
+	}
+
+	private static final class Result {
+		final long wallNanos;
+		final double lastClock;
+		final double energy;
+		final int finished;
+
+		Result(long wallNanos, double lastClock, double energy, int finished) {
+			this.wallNanos = wallNanos;
+			this.lastClock = lastClock;
+			this.energy = energy;
+			this.finished = finished;
+		}
+	}
+
+	private static PowerDatacenterCustom createDatacenter(String name, int hosts) {
+		List<Host> hostList = new ArrayList<>();
+
+		int mips = 1000;
+		int ram = 16384; //host memory (MB)
+		long storage = 1000000; //host storage
+		int bw = 10000;
+
+		for (int hostId = 0; hostId < hosts; hostId++) {
+			List<Pe> peList = new ArrayList<>();
+			for (int pe = 0; pe < PES_PER_HOST; pe++) {
+				peList.add(new Pe(pe, new PeProvisionerSimple(mips)));
+			}
+			hostList.add(
+					new PowerHost(
+							hostId,
+							new RamProvisionerSimple(ram),
+							new BwProvisionerSimple(bw),
+							storage,
+							peList,
+							new VmSchedulerTimeShared(peList),
+							new PowerModelLinear(250, 30)
+					)
+			);
+		}
+
+		String arch = "x86";      // system architecture
+		String os = "Linux";          // operating system
+		String vmm = "Xen";
+		double time_zone = 10.0;         // time zone this resource located
+		double cost = 3.0;              // the cost of using processing in this resource
+		double costPerMem = 0.05;		// the cost of using memory in this resource
+		double costPerStorage = 0.1;	// the cost of using storage in this resource
+		double costPerBw = 0.1;			// the cost of using bw in this resource
+		LinkedList<Storage> storageList = new LinkedList<>();	//we are not adding SAN devices by now
+
+		DatacenterCharacteristics characteristics = new DatacenterCharacteristics(
+				arch, os, vmm, hostList, time_zone, cost, costPerMem, costPerStorage, costPerBw);
+
+		PowerDatacenterCustom datacenter = null;
+		try {
+			datacenter = new PowerDatacenterCustom(name, characteristics, new VmAllocationPolicySimple(hostList), storageList, 20, false);
+			datacenter.setDisableMigrations(true);
+		} catch (Exception e) {
+			e.printStackTrace();
+		}
+
+		return datacenter;
+	}
+}